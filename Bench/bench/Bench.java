@@ -0,0 +1,446 @@
+package bench;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import fa.State;
+import fa.dfa.CompiledDFA;
+import fa.dfa.DFA;
+import fa.dfa.GeneratedDFA;
+import fa.nfa.Finder;
+import fa.nfa.NFA;
+import fa.nfa.NFAState;
+import re.RE;
+
+/**
+ * Bench times the expensive parts of the fa and re packages on inputs
+ * that grow, and prints the results as CSV or JSON so two runs can be
+ * compared with Compare. It needs nothing but the JDK.
+ *
+ * Each benchmark is run for a few warmup samples, so the JIT has compiled
+ * it, then for a few measured samples. A sample repeats the operation
+ * until it has taken at least the sample time, and records the average
+ * time per operation. The median of the measured samples is reported,
+ * along with the fastest and slowest.
+ *
+ * Usage: java bench.Bench [--quick] [--json] [--filter text] [--out file]
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+public class Bench {
+    // Results of operations are stored here, so the JIT can't throw the work away
+    private static volatile Object sink;
+
+    private boolean quick;          // fewer, shorter samples and smaller inputs
+    private String filter;          // only run benchmarks whose name contains this
+    private List<Result> results;   // everything measured so far
+
+    /**
+     * Constructor for a benchmark run.
+     *
+     * @param quick - whether to run a short smoke test instead of a full run
+     * @param filter - only run benchmarks whose name contains this, or null for all
+     */
+    public Bench(boolean quick, String filter) {
+        this.quick = quick;
+        this.filter = filter;
+        this.results = new ArrayList<>();
+    }
+
+    /**
+     * Runs the benchmarks and prints the results.
+     *
+     * @param args - the options, see the class comment
+     * @throws FileNotFoundException if the output file can't be written
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        boolean quick = false;
+        boolean json = false;
+        String filter = null;
+        String out = null;
+
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+            case "--quick":
+                quick = true;
+                break;
+            case "--json":
+                json = true;
+                break;
+            case "--filter":
+                filter = args[++i];
+                break;
+            case "--out":
+                out = args[++i];
+                break;
+            default:
+                System.err.println("Usage: java bench.Bench [--quick] [--json] [--filter text] [--out file]");
+                System.exit(2);
+            }
+        }
+
+        Bench bench = new Bench(quick, filter);
+        bench.run();
+
+        PrintStream stream = out == null ? System.out : new PrintStream(out);
+        if(json) {
+            bench.printJson(stream);
+        } else {
+            bench.printCsv(stream);
+        }
+        stream.flush();
+        if(out != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Runs every benchmark family that passes the filter.
+     */
+    public void run() {
+        if(wanted("NFA.getDFA")) {
+            benchGetDFA();
+        }
+        if(wanted("RE.getNFA")) {
+            benchGetNFA();
+        }
+        if(wanted("DFA.accepts", "CompiledDFA.accepts")) {
+            benchAccepts();
+        }
+        if(wanted("NFA.eClosure")) {
+            benchEClosure();
+        }
+        if(wanted("Finder.findAll")) {
+            benchFindAll();
+        }
+        if(wanted("GeneratedDFA.test", "GeneratedDFA.table")) {
+            benchGenerated();
+        }
+    }
+
+    /**
+     * Subset construction on (a|b)*a(a|b)^n, whose smallest DFA has 2^(n+1)
+     * states. The NFA is built once; each operation determinizes it again.
+     */
+    private void benchGetDFA() {
+        int[] sizes = quick ? new int[] {2, 6} : new int[] {2, 4, 6, 8, 10, 12};
+        for(int n : sizes) {
+            StringBuilder regex = new StringBuilder("(a|b)*a");
+            for(int i = 0; i < n; i++) {
+                regex.append("(a|b)");
+            }
+            NFA nfa = new RE(regex.toString()).getNFA();
+            measure("NFA.getDFA", "n=" + n, 1, "ops", () -> nfa.getDFA());
+        }
+    }
+
+    /**
+     * Parsing long generated regular expressions into NFAs, with each construction.
+     */
+    private void benchGetNFA() {
+        int[] lengths = quick ? new int[] {1000} : new int[] {1000, 10000, 100000};
+        for(int length : lengths) {
+            String regex = generateRegex(length, new Random(length));
+            for(RE.Construction construction : RE.Construction.values()) {
+                measure("RE.getNFA", "construction=" + construction.name().toLowerCase(Locale.ROOT)
+                        + ";length=" + regex.length(), regex.length(), "chars", () -> {
+                            RE re = new RE(regex);
+                            re.setConstruction(construction);
+                            return re.getNFA();
+                        });
+            }
+        }
+    }
+
+    /**
+     * Matching throughput of DFA.accepts and CompiledDFA.accepts, over
+     * inputs of several lengths and alphabets of several sizes. The
+     * pattern is (c1|c2|...|ck)*c1, so every input is read to the end.
+     */
+    private void benchAccepts() {
+        int[] alphabets = quick ? new int[] {2} : new int[] {2, 16, 64};
+        int[] lengths = quick ? new int[] {1000} : new int[] {10, 1000, 100000};
+        for(int k : alphabets) {
+            char[] sigma = alphabet(k);
+            StringBuilder regex = new StringBuilder("(");
+            for(int i = 0; i < k; i++) {
+                regex.append(i > 0 ? "|" : "").append(sigma[i]);
+            }
+            regex.append(")*").append(sigma[0]);
+
+            NFA nfa = new RE(regex.toString()).getNFA();
+            DFA dfa = nfa.getDFA();
+            CompiledDFA compiled = nfa.getCompiledDFA();
+
+            for(int length : lengths) {
+                Random random = new Random(31L * k + length);
+                char[] input = new char[length];
+                for(int i = 0; i < length; i++) {
+                    input[i] = sigma[random.nextInt(k)];
+                }
+                String s = new String(input);
+                String param = "alphabet=" + k + ";length=" + length;
+                measure("DFA.accepts", param, length, "chars", () -> dfa.accepts(s));
+                measure("CompiledDFA.accepts", param, length, "chars", () -> compiled.accepts(s));
+            }
+        }
+    }
+
+    /**
+     * eClosure of every state of an NFA that is mostly empty transitions:
+     * a chain of n states joined by empty transitions, with an empty
+     * transition back every 10 states and a transition on 'a' every 3.
+     * Each operation builds the NFA afresh, so the closure tables are
+     * built inside the timing too.
+     */
+    private void benchEClosure() {
+        int[] sizes = quick ? new int[] {100} : new int[] {100, 1000, 3000};
+        for(int n : sizes) {
+            measure("NFA.eClosure", "states=" + n, n, "states", () -> {
+                NFA nfa = epsilonChain(n);
+                int total = 0;
+                for(State s : nfa.getStates()) {
+                    total += nfa.eClosure((NFAState) s).size();
+                }
+                return total;
+            });
+        }
+    }
+
+    /**
+     * Searching for every match of a|a*b in a run of a's. Every offset
+     * starts a match of one character, and the a*b choice keeps the
+     * forward DFA alive to the end of the text, so a search that scans on
+     * until the DFA dies takes time quadratic in the length. The throughput
+     * should stay about the same as the length grows.
+     */
+    private void benchFindAll() {
+        int[] lengths = quick ? new int[] {10000} : new int[] {10000, 100000, 1000000};
+        Finder finder = new Finder(new RE("a|a*b").getNFA());
+        for(int length : lengths) {
+            String text = "a".repeat(length);
+            measure("Finder.findAll", "length=" + length, length, "chars", () -> finder.findAll(text));
+        }
+    }
+
+    /**
+     * Matching with the code GeneratedDFA writes, against the table of the
+     * same CompiledDFA. Three patterns are run: a*b*c*d* over long runs of
+     * each letter, where generated code should be many times faster;
+     * x(a|b|c)*y(d|f)*z over random letters, where it should be about even;
+     * and (a|b)*abb, which GeneratedDFA doesn't generate code for, so both
+     * should take the same time.
+     */
+    private void benchGenerated() {
+        int length = quick ? 10000 : 1000000;
+        Random random = new Random(length);
+        StringBuilder runs = new StringBuilder();
+        StringBuilder loops = new StringBuilder("x");
+        StringBuilder abb = new StringBuilder();
+        for(char c : "abcd".toCharArray()) {
+            runs.append(String.valueOf(c).repeat(length / 4));
+        }
+        for(int i = 0; i < length / 2; i++) {
+            loops.append("abc".charAt(random.nextInt(3)));
+        }
+        loops.append('y');
+        for(int i = 0; i < length / 2; i++) {
+            loops.append("df".charAt(random.nextInt(2)));
+        }
+        loops.append('z');
+        for(int i = 0; i < length; i++) {
+            abb.append("ab".charAt(random.nextInt(2)));
+        }
+
+        String[][] cases = {
+                {"runs", "a*b*c*d*", runs.toString()},
+                {"loops", "x(a|b|c)*y(d|f)*z", loops.toString()},
+                {"abb", "(a|b)*abb", abb.toString()}};
+        for(String[] c : cases) {
+            CompiledDFA dfa = new RE(c[1]).getCompiledDFA();
+            Predicate<CharSequence> generated = GeneratedDFA.compile(dfa);
+            String text = c[2];
+            String param = "pattern=" + c[0] + ";length=" + text.length();
+            measure("GeneratedDFA.test", param, text.length(), "chars", () -> generated.test(text));
+            measure("GeneratedDFA.table", param, text.length(), "chars", () -> dfa.accepts(text));
+        }
+    }
+
+    /**
+     * Builds the NFA for the eClosure benchmark.
+     *
+     * @param n - the number of states
+     * @return - the NFA
+     */
+    static NFA epsilonChain(int n) {
+        NFA nfa = new NFA();
+        nfa.addStartState("q0");
+        for(int i = 1; i < n; i++) {
+            nfa.addState("q" + i);
+        }
+        nfa.addFinalState("q" + (n - 1));
+        for(int i = 0; i + 1 < n; i++) {
+            nfa.addTransition("q" + i, 'e', "q" + (i + 1));
+            if(i % 10 == 9) {
+                nfa.addTransition("q" + i, 'e', "q" + (i - 9));
+            }
+            if(i % 3 == 0) {
+                nfa.addTransition("q" + i, 'a', "q" + (i + 1));
+            }
+        }
+        return nfa;
+    }
+
+    /**
+     * Generates a random regular expression of about the given length over
+     * a, b, c and d, built from short starred and alternated groups.
+     *
+     * @param length - roughly how many characters to generate
+     * @param random - the source of randomness
+     * @return - the regular expression
+     */
+    static String generateRegex(int length, Random random) {
+        StringBuilder out = new StringBuilder();
+        while(out.length() < length) {
+            if(out.length() > 0) {
+                out.append(random.nextInt(4) == 0 ? "|" : "");
+            }
+            switch(random.nextInt(4)) {
+            case 0:
+                out.append("(").append(letter(random)).append("|").append(letter(random)).append(")*");
+                break;
+            case 1:
+                out.append("(").append(letter(random)).append(letter(random)).append(")*");
+                break;
+            case 2:
+                out.append("(").append(letter(random)).append("|").append(letter(random))
+                        .append(letter(random)).append(")");
+                break;
+            default:
+                out.append(letter(random));
+                break;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * A random letter from a to d
+     *
+     * @param random - the source of randomness
+     * @return - the letter
+     */
+    private static char letter(Random random) {
+        return "abcd".charAt(random.nextInt(4));
+    }
+
+    /**
+     * An alphabet of k characters that are safe to use in regular
+     * expressions: no 'e', which means the empty string, and none of the
+     * operator characters.
+     *
+     * @param k - the number of characters, at most 64
+     * @return - the characters
+     */
+    static char[] alphabet(int k) {
+        String pool = "abcdfghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789#$%&";
+        return pool.substring(0, k).toCharArray();
+    }
+
+    /**
+     * Private function that times an operation and records the result.
+     *
+     * @param name - the benchmark's name
+     * @param param - the parameters it was run with, as key=value pairs joined by ';'
+     * @param work - how many units of work one operation does
+     * @param unit - what the units of work are, for the throughput
+     * @param operation - the operation to time
+     */
+    private void measure(String name, String param, long work, String unit, Supplier<Object> operation) {
+        if(filter != null && !name.contains(filter)) {
+            return;
+        }
+        int warmups = quick ? 1 : 3;
+        int samples = quick ? 3 : 5;
+        long sampleNanos = (quick ? 20L : 200L) * 1000000L;
+
+        double[] times = new double[samples];
+        for(int i = -warmups; i < samples; i++) {
+            long reps = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                sink = operation.get();
+                reps++;
+                elapsed = System.nanoTime() - start;
+            } while(elapsed < sampleNanos);
+            if(i >= 0) {
+                times[i] = (double) elapsed / reps;
+            }
+        }
+
+        Arrays.sort(times);
+        double median = times[samples / 2];
+        results.add(new Result(name, param, samples, median, times[0], times[samples - 1],
+                work * 1e9 / median, unit));
+        System.err.printf(Locale.ROOT, "%-20s %-40s %14.1f ns/op%n", name, param, median);
+    }
+
+    /**
+     * Private function checking a benchmark family against the filter, so
+     * the setup for a family that won't run can be skipped
+     *
+     * @param names - the names of the benchmarks in the family
+     * @return - true if any of them passes the filter
+     */
+    private boolean wanted(String... names) {
+        for(String name : names) {
+            if(filter == null || name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prints the results as CSV, with a header line.
+     *
+     * @param out - where to print
+     */
+    public void printCsv(PrintStream out) {
+        out.println(Result.CSV_HEADER);
+        for(Result r : results) {
+            out.println(r.toCsv());
+        }
+    }
+
+    /**
+     * Prints the results as a JSON array of objects.
+     *
+     * @param out - where to print
+     */
+    public void printJson(PrintStream out) {
+        out.println("[");
+        for(int i = 0; i < results.size(); i++) {
+            out.println("  " + results.get(i).toJson() + (i + 1 < results.size() ? "," : ""));
+        }
+        out.println("]");
+    }
+
+    /**
+     * Getter for the results measured so far
+     *
+     * @return - the results, in the order they were measured
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compare reads two CSV files written by Bench, a baseline and a new run,
+ * and prints how the median time of every benchmark in both changed. It
+ * exits with status 1 if any benchmark got slower by more than the
+ * threshold, so it can fail a build or a script.
+ *
+ * Usage: java bench.Compare baseline.csv new.csv [threshold]
+ *
+ * The threshold is a fraction, 0.10 by default, meaning 10% slower.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+public class Compare {
+
+    /**
+     * Compares the two runs.
+     *
+     * @param args - the baseline file, the new file, and optionally the threshold
+     * @throws IOException if a file can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2 || args.length > 3) {
+            System.err.println("Usage: java bench.Compare baseline.csv new.csv [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2]) : 0.10;
+
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> current = read(args[1]);
+
+        int regressions = 0;
+        for(Result now : current.values()) {
+            Result before = baseline.get(now.getKey());
+            if(before == null) {
+                continue;   // a new benchmark has nothing to compare against
+            }
+            double ratio = now.getMedian() / before.getMedian();
+            boolean slower = ratio > 1 + threshold;
+            if(slower) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-60s %14.1f -> %14.1f ns/op  %6.2fx%s%n",
+                    now.getKey(), before.getMedian(), now.getMedian(), ratio, slower ? "  SLOWER" : "");
+        }
+
+        System.out.println(regressions + " regression(s) over " + Math.round(threshold * 100) + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Reads the results in a CSV file, skipping the header line.
+     *
+     * @param file - the file
+     * @return - the results, by key, in file order
+     * @throws IOException if the file can't be read
+     */
+    private static Map<String, Result> read(String file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        List<String> lines = Files.readAllLines(Paths.get(file));
+        for(String line : lines) {
+            if(line.isEmpty() || line.equals(Result.CSV_HEADER)) {
+                continue;
+            }
+            Result r = Result.fromCsv(line);
+            results.put(r.getKey(), r);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import java.util.Locale;
+
+/**
+ * One measured benchmark: what was run, with which parameters, and how
+ * long it took. Times are in nanoseconds per operation.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+public class Result {
+    // The header line of the CSV format, naming the columns toCsv writes
+    public static final String CSV_HEADER = "benchmark,param,samples,median_ns,min_ns,max_ns,throughput,unit";
+
+    private String name;        // the benchmark's name, such as NFA.getDFA
+    private String param;       // its parameters, as key=value pairs joined by ';'
+    private int samples;        // how many samples were measured
+    private double median;      // median time per operation
+    private double min;         // fastest sample's time per operation
+    private double max;         // slowest sample's time per operation
+    private double throughput;  // units of work per second, at the median
+    private String unit;        // what the units of work are
+
+    /**
+     * Constructor for a result.
+     *
+     * @param name - the benchmark's name
+     * @param param - its parameters
+     * @param samples - how many samples were measured
+     * @param median - median nanoseconds per operation
+     * @param min - fastest sample, in nanoseconds per operation
+     * @param max - slowest sample, in nanoseconds per operation
+     * @param throughput - units of work per second, at the median
+     * @param unit - what the units of work are
+     */
+    public Result(String name, String param, int samples, double median, double min, double max,
+                  double throughput, String unit) {
+        this.name = name;
+        this.param = param;
+        this.samples = samples;
+        this.median = median;
+        this.min = min;
+        this.max = max;
+        this.throughput = throughput;
+        this.unit = unit;
+    }
+
+    /**
+     * Reads a result back from a line written by toCsv.
+     *
+     * @param line - the CSV line
+     * @return - the result
+     * @throws IllegalArgumentException if the line doesn't have the right columns
+     */
+    public static Result fromCsv(String line) {
+        String[] f = line.split(",");
+        if(f.length != 8) {
+            throw new IllegalArgumentException("Expected 8 columns: " + line);
+        }
+        return new Result(f[0], f[1], Integer.parseInt(f[2]), Double.parseDouble(f[3]),
+                Double.parseDouble(f[4]), Double.parseDouble(f[5]), Double.parseDouble(f[6]), f[7]);
+    }
+
+    /**
+     * The key identifying the benchmark across runs
+     *
+     * @return - the name and parameters
+     */
+    public String getKey() {
+        return name + " " + param;
+    }
+
+    /**
+     * Getter for the median time
+     *
+     * @return - median nanoseconds per operation
+     */
+    public double getMedian() {
+        return median;
+    }
+
+    /**
+     * Writes the result as one CSV line, in the columns of CSV_HEADER.
+     *
+     * @return - the line
+     */
+    public String toCsv() {
+        return String.format(Locale.ROOT, "%s,%s,%d,%.1f,%.1f,%.1f,%.1f,%s",
+                name, param, samples, median, min, max, throughput, unit + "/s");
+    }
+
+    /**
+     * Writes the result as a JSON object on one line.
+     *
+     * @return - the object
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"benchmark\": \"%s\", \"param\": \"%s\", \"samples\": %d, \"median_ns\": %.1f, "
+                + "\"min_ns\": %.1f, \"max_ns\": %.1f, \"throughput\": %.1f, \"unit\": \"%s\"}",
+                name, param, samples, median, min, max, throughput, unit + "/s");
+    }
+}
@@ -0,0 +1,456 @@
+package bench;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import re.RE;
+import re.Regex;
+
+/**
+ * Workload generates test files for NFADriver and REDriver that are much
+ * larger than the hand written ones, from a seed, so the same workload
+ * can be made again on any machine. It makes random NFAs and regular
+ * expressions of a chosen size, and the known hard cases for subset
+ * construction and parsing, each followed by a corpus of input strings.
+ * About half the strings are made to be in the language, and the rest
+ * are random strings over the same alphabet.
+ *
+ * Usage: java bench.Workload nfa|regex [options]
+ *
+ *   --family name     what to generate, random by default:
+ *                     for nfa, random or blowup
+ *                     for regex, random, blowup, deepstar or wideunion
+ *   --size n          the size of the family: states, blowup exponent,
+ *                     nesting depth, number of choices or pattern length
+ *   --alphabet k      number of symbols, 2 by default
+ *   --density d       random NFAs: transitions per state and symbol, 1 by default
+ *   --epsilon d       random NFAs: empty transitions per state, 0.3 by default
+ *   --strings m       number of input strings, 10 by default
+ *   --length l        longest input string, 20 by default
+ *   --seed s          the seed, 1 by default
+ *   --out file        write to the file instead of the console
+ *
+ * NFADriver reads each transition as three characters, so every state
+ * name is a single character, and an NFA can have at most 94 states.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+public class Workload {
+    // Characters used as symbols, the same ones Bench uses
+    private static final String SYMBOLS = new String(Bench.alphabet(64));
+
+    // Characters used as NFA state names: any printable character but a space
+    private static final String STATE_NAMES =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    private Random random;      // the source of every random choice
+    private String family;      // what to generate
+    private int size;           // the size of the family
+    private int alphabet;       // number of symbols
+    private double density;     // random NFAs: transitions per state and symbol
+    private double epsilon;     // random NFAs: empty transitions per state
+    private int strings;        // number of input strings
+    private int length;         // longest input string
+
+    /**
+     * Generates a workload file.
+     *
+     * @param args - what to generate and the options, see the class comment
+     * @throws FileNotFoundException if the output file can't be written
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        if(args.length == 0 || !(args[0].equals("nfa") || args[0].equals("regex"))) {
+            usage();
+        }
+
+        Workload workload = new Workload();
+        String out = null;
+        long seed = 1;
+        for(int i = 1; i < args.length; i++) {
+            if(i + 1 >= args.length) {
+                usage();
+            }
+            String value = args[++i];
+            switch(args[i - 1]) {
+            case "--family":
+                workload.family = value;
+                break;
+            case "--size":
+                workload.size = Integer.parseInt(value);
+                break;
+            case "--alphabet":
+                workload.alphabet = Integer.parseInt(value);
+                break;
+            case "--density":
+                workload.density = Double.parseDouble(value);
+                break;
+            case "--epsilon":
+                workload.epsilon = Double.parseDouble(value);
+                break;
+            case "--strings":
+                workload.strings = Integer.parseInt(value);
+                break;
+            case "--length":
+                workload.length = Integer.parseInt(value);
+                break;
+            case "--seed":
+                seed = Long.parseLong(value);
+                break;
+            case "--out":
+                out = value;
+                break;
+            default:
+                usage();
+            }
+        }
+        workload.random = new Random(seed);
+
+        String text = args[0].equals("nfa") ? workload.nfa() : workload.regex();
+        PrintStream stream = out == null ? System.out : new PrintStream(out);
+        stream.print(text);
+        stream.flush();
+        if(out != null) {
+            stream.close();
+        }
+    }
+
+    /**
+     * Constructor for a workload with the default options.
+     */
+    public Workload() {
+        this.random = new Random(1);
+        this.family = "random";
+        this.size = 0;
+        this.alphabet = 2;
+        this.density = 1.0;
+        this.epsilon = 0.3;
+        this.strings = 10;
+        this.length = 20;
+    }
+
+    /**
+     * Generates an NFA in the NFADriver format, followed by its input strings.
+     *
+     * @return - the contents of the file
+     */
+    public String nfa() {
+        int k = checkAlphabet();
+        List<int[]> transitions = new ArrayList<>();   // from, symbol index or -1 for empty, to
+        boolean[] finals;
+        int n;
+
+        switch(family) {
+        case "random":
+            n = size > 0 ? size : 8;
+            checkStates(n);
+            finals = new boolean[n];
+            for(int s = 0; s < n; s++) {
+                finals[s] = random.nextInt(4) == 0;
+                for(int c = 0; c < k; c++) {
+                    for(int t = count(density); t > 0; t--) {
+                        transitions.add(new int[] {s, c, random.nextInt(n)});
+                    }
+                }
+                for(int t = count(epsilon); t > 0; t--) {
+                    transitions.add(new int[] {s, -1, random.nextInt(n)});
+                }
+            }
+            break;
+        case "blowup":
+            // (a|b)*a(a|b)^(n-1): the n-th symbol from the end is an a, and
+            // the smallest DFA needs 2^n states to remember the last n symbols
+            int m = size > 0 ? size : 8;
+            n = m + 1;
+            checkStates(n);
+            finals = new boolean[n];
+            finals[m] = true;
+            for(int c = 0; c < k; c++) {
+                transitions.add(new int[] {0, c, 0});
+            }
+            transitions.add(new int[] {0, 0, 1});
+            for(int s = 1; s < m; s++) {
+                for(int c = 0; c < k; c++) {
+                    transitions.add(new int[] {s, c, s + 1});
+                }
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown NFA family: " + family);
+        }
+
+        StringBuilder out = new StringBuilder();
+
+        // line 1 is the final states, line 2 the start state, line 3 the rest
+        StringBuilder others = new StringBuilder();
+        for(int s = 0; s < n; s++) {
+            if(finals[s]) {
+                out.append(out.length() > 0 ? " " : "").append(STATE_NAMES.charAt(s));
+            } else if(s != 0) {
+                others.append(others.length() > 0 ? " " : "").append(STATE_NAMES.charAt(s));
+            }
+        }
+        out.append('\n').append(STATE_NAMES.charAt(0)).append('\n');
+        out.append(others).append('\n');
+
+        // line 4 is the transitions, as from, symbol, to
+        for(int i = 0; i < transitions.size(); i++) {
+            int[] t = transitions.get(i);
+            out.append(i > 0 ? " " : "").append(STATE_NAMES.charAt(t[0]))
+                    .append(t[1] < 0 ? 'e' : SYMBOLS.charAt(t[1])).append(STATE_NAMES.charAt(t[2]));
+        }
+        out.append('\n');
+
+        // then the input strings, half of them walks through the NFA
+        for(int i = 0; i < strings; i++) {
+            String s = i % 2 == 0 ? walk(transitions, finals) : randomString(k);
+            out.append(s.isEmpty() ? "e" : s).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Generates a regular expression in the REDriver format, followed by
+     * its input strings.
+     *
+     * @return - the contents of the file
+     */
+    public String regex() {
+        int k = checkAlphabet();
+        String regex;
+
+        switch(family) {
+        case "random":
+            regex = randomRegex(size > 0 ? size : 30, k);
+            break;
+        case "blowup": {
+            // (a|b|...)*a(a|b|...)^(n-1), the regular expression for the NFA family
+            int n = size > 0 ? size : 8;
+            String any = "(" + String.join("|", symbols(k)) + ")";
+            StringBuilder b = new StringBuilder(any).append('*').append(SYMBOLS.charAt(0));
+            for(int i = 1; i < n; i++) {
+                b.append(any);
+            }
+            regex = b.toString();
+            break;
+        }
+        case "deepstar": {
+            // stars nested n deep, with a symbol at every level: ((a*b)*a)*...
+            int n = size > 0 ? size : 8;
+            String r = String.valueOf(SYMBOLS.charAt(0));
+            for(int i = 1; i <= n; i++) {
+                r = "(" + r + ")*" + SYMBOLS.charAt(i % k);
+            }
+            regex = "(" + r + ")*";
+            break;
+        }
+        case "wideunion": {
+            // n random words of up to 8 symbols, as one union
+            int n = size > 0 ? size : 100;
+            StringBuilder b = new StringBuilder();
+            for(int i = 0; i < n; i++) {
+                b.append(i > 0 ? "|" : "");
+                for(int j = 1 + random.nextInt(8); j > 0; j--) {
+                    b.append(SYMBOLS.charAt(random.nextInt(k)));
+                }
+            }
+            regex = b.toString();
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unknown regex family: " + family);
+        }
+
+        StringBuilder out = new StringBuilder(regex).append('\n');
+        Regex parsed = new RE(regex).getRegex();
+        for(int i = 0; i < strings; i++) {
+            String s = i % 2 == 0 ? sample(parsed) : randomString(k);
+            out.append(s.isEmpty() ? "e" : s).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Private function generating a random regular expression of about the
+     * given length, using every operator
+     *
+     * @param target - roughly how many characters to generate
+     * @param k - the number of symbols
+     * @return - the regular expression
+     */
+    private String randomRegex(int target, int k) {
+        if(target <= 1) {
+            return String.valueOf(SYMBOLS.charAt(random.nextInt(k)));
+        }
+        int split = 1 + random.nextInt(target - 1);
+        switch(random.nextInt(4)) {
+        case 0:
+            return randomRegex(split, k) + "|" + randomRegex(target - split, k);
+        case 1:
+            return "(" + randomRegex(target - 3, k) + ")*";
+        default:
+            String left = randomRegex(split, k);
+            String right = randomRegex(target - split, k);
+            return (left.contains("|") ? "(" + left + ")" : left) + (right.contains("|") ? "(" + right + ")" : right);
+        }
+    }
+
+    /**
+     * Private function making a string in the language of an NFA by walking
+     * it from the start state, taking random transitions. Walks that don't
+     * end in a final state within the length limit are tried again a few
+     * times, and the last one is used either way.
+     *
+     * @param transitions - the NFA's transitions
+     * @param finals - which states are final
+     * @return - the string read on the walk
+     */
+    private String walk(List<int[]> transitions, boolean[] finals) {
+        StringBuilder s = new StringBuilder();
+        for(int attempt = 0; attempt < 20; attempt++) {
+            s.setLength(0);
+            int state = 0;
+            for(int steps = 0; steps < 4 * length + 4 && s.length() < length; steps++) {
+                if(finals[state] && random.nextInt(3) == 0) {
+                    return s.toString();
+                }
+                List<int[]> out = new ArrayList<>();
+                for(int[] t : transitions) {
+                    if(t[0] == state) {
+                        out.add(t);
+                    }
+                }
+                if(out.isEmpty()) {
+                    break;
+                }
+                int[] t = out.get(random.nextInt(out.size()));
+                if(t[1] >= 0) {
+                    s.append(SYMBOLS.charAt(t[1]));
+                }
+                state = t[2];
+            }
+            if(finals[state]) {
+                return s.toString();
+            }
+        }
+        return s.toString();
+    }
+
+    /**
+     * Private function making a random string in the language of a regex,
+     * no longer than the length limit allows
+     *
+     * @param regex - the parsed regular expression
+     * @return - the string
+     */
+    private String sample(Regex regex) {
+        StringBuilder s = new StringBuilder();
+        regex.accept(new Regex.Visitor<Void>() {
+            @Override
+            public Void visitUnion(Regex.Union union) {
+                List<Regex> choices = union.getChoices();
+                return choices.get(random.nextInt(choices.size())).accept(this);
+            }
+
+            @Override
+            public Void visitConcat(Regex.Concat concat) {
+                for(Regex part : concat.getParts()) {
+                    part.accept(this);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitStar(Regex.Star star) {
+                while(s.length() < length && random.nextBoolean()) {
+                    star.getBody().accept(this);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitLiteral(Regex.Literal literal) {
+                if(!literal.isEpsilon()) {
+                    s.append(literal.getSymbol());
+                }
+                return null;
+            }
+        });
+        return s.toString();
+    }
+
+    /**
+     * Private function making a random string over the first k symbols
+     *
+     * @param k - the number of symbols
+     * @return - the string, up to the length limit long
+     */
+    private String randomString(int k) {
+        StringBuilder s = new StringBuilder();
+        for(int i = random.nextInt(length + 1); i > 0; i--) {
+            s.append(SYMBOLS.charAt(random.nextInt(k)));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Private function drawing a whole number of things from an average:
+     * the whole part always, and one more with the fractional part's chance
+     *
+     * @param average - the average number
+     * @return - the number drawn
+     */
+    private int count(double average) {
+        int whole = (int) average;
+        return whole + (random.nextDouble() < average - whole ? 1 : 0);
+    }
+
+    /**
+     * Private function listing the first k symbols as strings
+     *
+     * @param k - the number of symbols
+     * @return - the symbols
+     */
+    private static List<String> symbols(int k) {
+        List<String> list = new ArrayList<>();
+        for(int i = 0; i < k; i++) {
+            list.add(String.valueOf(SYMBOLS.charAt(i)));
+        }
+        return list;
+    }
+
+    /**
+     * Private function checking the alphabet size
+     *
+     * @return - the alphabet size
+     */
+    private int checkAlphabet() {
+        if(alphabet < 1 || alphabet > SYMBOLS.length()) {
+            throw new IllegalArgumentException("Alphabet size must be from 1 to " + SYMBOLS.length() + ": " + alphabet);
+        }
+        return alphabet;
+    }
+
+    /**
+     * Private function checking the number of states fits in the NFADriver format
+     *
+     * @param n - the number of states
+     */
+    private static void checkStates(int n) {
+        if(n < 1 || n > STATE_NAMES.length()) {
+            throw new IllegalArgumentException("NFAs can have from 1 to " + STATE_NAMES.length() + " states: " + n);
+        }
+    }
+
+    /**
+     * Private function printing how to use the generator, and exiting
+     */
+    private static void usage() {
+        System.err.println("Usage: java bench.Workload nfa|regex [--family name] [--size n] [--alphabet k]"
+                + " [--density d] [--epsilon d] [--strings m] [--length l] [--seed s] [--out file]");
+        System.exit(2);
+    }
+}
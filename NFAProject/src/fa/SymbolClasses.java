@@ -0,0 +1,132 @@
+package fa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits an alphabet into symbol classes: groups of characters that no
+ * transition of an automaton tells apart. Determinizing, minimizing and
+ * building transition tables only need to look at one character of each
+ * class, so the work and the width of the tables shrink with the number
+ * of classes rather than the size of the alphabet.
+ * Classes are numbered from 1 in the order their first character appears
+ * in the alphabet. Class 0 holds every character outside the alphabet.
+ * @author James Souder and Jason Egbert
+ */
+public final class SymbolClasses {
+	private final int[] classOf;	// char -> class, chars past the end are class 0
+	private final char[][] members;	// the characters in each class, class 0 is empty
+
+	private SymbolClasses(int[] classOf, char[][] members){
+		this.classOf = classOf;
+		this.members = members;
+	}
+
+	/**
+	 * Groups the symbols of an alphabet into classes. Two symbols end up
+	 * in the same class exactly when their signatures are equal, so a
+	 * signature should describe every transition made on the symbol.
+	 * @param symbols the alphabet, in order
+	 * @param signatures the signature of each symbol, in the same order
+	 * @return the symbol classes
+	 */
+	public static SymbolClasses group(char[] symbols, int[][] signatures){
+		Map<Signature, Integer> classes = new HashMap<Signature, Integer>();
+		List<StringBuilder> groups = new ArrayList<StringBuilder>();
+		char max = 0;
+		for(char c : symbols){
+			max = (char) Math.max(max, c);
+		}
+		int[] classOf = new int[symbols.length == 0 ? 0 : max + 1];
+
+		for(int i = 0; i < symbols.length; i++){
+			Signature key = new Signature(signatures[i]);
+			Integer c = classes.get(key);
+			if(c == null){
+				c = groups.size() + 1;
+				classes.put(key, c);
+				groups.add(new StringBuilder());
+			}
+			groups.get(c - 1).append(symbols[i]);
+			classOf[symbols[i]] = c;
+		}
+
+		char[][] members = new char[groups.size() + 1][];
+		members[0] = new char[0];
+		for(int c = 1; c < members.length; c++){
+			members[c] = groups.get(c - 1).toString().toCharArray();
+		}
+		return new SymbolClasses(classOf, members);
+	}
+
+	/**
+	 * The class a character belongs to
+	 * @param c the character
+	 * @return its class, 0 if it is outside the alphabet
+	 */
+	public int classOf(char c){
+		return c < classOf.length ? classOf[c] : 0;
+	}
+
+	/**
+	 * Getter for the number of classes
+	 * @return the number of classes, including class 0
+	 */
+	public int getClassCount(){
+		return members.length;
+	}
+
+	/**
+	 * A character standing for a whole class. Any member would do, since
+	 * they all behave the same; this is the first one in the alphabet.
+	 * @param c the class, from 1 up
+	 * @return a character of the class
+	 */
+	public char representative(int c){
+		return members[c][0];
+	}
+
+	/**
+	 * The characters in a class
+	 * @param c the class
+	 * @return a copy of the characters in the class, in alphabet order
+	 */
+	public char[] getMembers(int c){
+		return members[c].clone();
+	}
+
+	/**
+	 * A lookup table from characters to classes. Characters past the end
+	 * of the table are in class 0.
+	 * @return a copy of the lookup table
+	 */
+	public int[] toLookupTable(){
+		return classOf.clone();
+	}
+
+	/**
+	 * Wraps a signature so it can be used as a hash map key.
+	 */
+	private static final class Signature {
+		private final int[] values;
+		private final int hash;
+
+		Signature(int[] values){
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode(){
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			return o instanceof Signature && Arrays.equals(values, ((Signature) o).values);
+		}
+	}
+}
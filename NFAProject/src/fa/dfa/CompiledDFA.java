@@ -0,0 +1,357 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, table driven form of a DFA for fast matching. States are
+ * numbered 0 to stateCount - 1, and every input character is mapped to a
+ * symbol class first. The whole transition function is one int array,
+ * indexed by state * classCount + class, and the final states are a bitset,
+ * so stepping the DFA is two array reads with no boxing or hashing.
+ * Class 0 holds every character outside the alphabet, and a transition
+ * of -1 means the input is rejected.
+ *
+ * Instances are made with DFA.compile(), NFA.getCompiledDFA() or of(),
+ * or loaded with CompiledDFAFile, and never change, so they can be shared
+ * between threads.
+ * @author James Souder and Jason Egbert
+ */
+public final class CompiledDFA {
+	// Size of the buffers used when reading from a stream, in chars or bytes
+	public static final int CHUNK_SIZE = 8192;
+
+	private final int[] classOf;	// char -> class, chars past the end are class 0
+	private final int classCount;	// number of classes, including class 0
+	private final int[] table;	// table[state * classCount + class] -> state, or -1
+	private final long[] finals;	// bit s is set if state s is final
+	private final int start;	// the start state
+
+	/**
+	 * Constructs a compiled DFA from its tables. The arrays are kept, not
+	 * copied, so they must not be changed afterwards.
+	 * @param classOf the class of every character, indexed by char
+	 * @param classCount the number of classes, including class 0
+	 * @param table the transition table
+	 * @param finals the bitset of final states
+	 * @param start the start state
+	 */
+	CompiledDFA(int[] classOf, int classCount, int[] table, long[] finals, int start){
+		this.classOf = classOf;
+		this.classCount = classCount;
+		this.table = table;
+		this.finals = finals;
+		this.start = start;
+	}
+
+	/**
+	 * Makes a compiled DFA from tables built elsewhere. The arrays are
+	 * copied and checked for consistency.
+	 * @param classOf the class of every character, indexed by char; chars past the end are class 0
+	 * @param classCount the number of classes, including class 0
+	 * @param table the transition table, table[state * classCount + class] -> state, or -1
+	 * @param finals the bitset of final states
+	 * @param start the start state
+	 * @return the compiled DFA
+	 * @throws IllegalArgumentException if the tables don't fit together
+	 */
+	public static CompiledDFA of(int[] classOf, int classCount, int[] table, long[] finals, int start){
+		check(classOf, classCount, table, finals, start);
+		return new CompiledDFA(classOf.clone(), classCount, table.clone(), finals.clone(), start);
+	}
+
+	/**
+	 * Checks that tables for a compiled DFA fit together.
+	 * @param classOf the class of every character, indexed by char
+	 * @param classCount the number of classes, including class 0
+	 * @param table the transition table
+	 * @param finals the bitset of final states
+	 * @param start the start state
+	 * @throws IllegalArgumentException if they don't
+	 */
+	static void check(int[] classOf, int classCount, int[] table, long[] finals, int start){
+		if(classCount < 1 || table.length % classCount != 0){
+			throw new IllegalArgumentException("Table length " + table.length
+					+ " is not a multiple of " + classCount + " classes");
+		}
+		int states = table.length / classCount;
+		if(start < 0 || start >= states || finals.length < (states + 63) >>> 6){
+			throw new IllegalArgumentException("Start state or final states out of range");
+		}
+		for(int to : table){
+			if(to < -1 || to >= states){
+				throw new IllegalArgumentException("Transition to missing state " + to);
+			}
+		}
+		for(int c : classOf){
+			if(c < 0 || c >= classCount){
+				throw new IllegalArgumentException("Character mapped to missing class " + c);
+			}
+		}
+	}
+
+	/**
+	 * Simulates the DFA on the input, without allocating anything. As with
+	 * DFA.accepts, the input "e" stands for the empty string.
+	 * @param input the input characters
+	 * @return true if the input is in the language of the DFA and false otherwise
+	 */
+	public boolean accepts(CharSequence input){
+		int state = start;
+		int length = input.length();
+		if(length == 1 && input.charAt(0) == 'e'){
+			length = 0;
+		}
+		for(int i = 0; i < length && state >= 0; i++){
+			char c = input.charAt(i);
+			state = table[state * classCount + (c < classOf.length ? classOf[c] : 0)];
+		}
+		return isFinal(state);
+	}
+
+	/**
+	 * Tests a whole batch of inputs, spread across the common fork/join
+	 * pool. The DFA never changes, so every thread can share it.
+	 * @param inputs the inputs to test
+	 * @return whether each input is accepted, in the same order as the inputs
+	 */
+	public boolean[] acceptsAll(List<? extends CharSequence> inputs){
+		return acceptsAll(inputs, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Tests a whole batch of inputs, spread across the threads of the given
+	 * fork/join pool.
+	 * @param inputs the inputs to test
+	 * @param pool the pool to run in
+	 * @return whether each input is accepted, in the same order as the inputs
+	 */
+	public boolean[] acceptsAll(List<? extends CharSequence> inputs, ForkJoinPool pool){
+		// copy the inputs out first, so lists without fast random access split well
+		CharSequence[] batch = inputs.toArray(new CharSequence[0]);
+		boolean[] results = new boolean[batch.length];
+		pool.submit(() -> IntStream.range(0, batch.length).parallel()
+				.forEach(i -> results[i] = accepts(batch[i]))).join();
+		return results;
+	}
+
+	/**
+	 * Simulates the DFA on a buffer, reading from its position up to its
+	 * limit without changing either. Buffers backed by an array are read
+	 * straight from the array.
+	 * @param input the input characters
+	 * @return true if the input is in the language of the DFA and false otherwise
+	 */
+	public boolean accepts(CharBuffer input){
+		if(input.remaining() == 1 && input.get(input.position()) == 'e'){
+			return isFinal(start);
+		}
+		int state;
+		if(input.hasArray()){
+			int offset = input.arrayOffset() + input.position();
+			state = run(start, input.array(), offset, input.remaining());
+		} else {
+			state = start;
+			for(int i = input.position(); i < input.limit() && state >= 0; i++){
+				state = step(state, input.get(i));
+			}
+		}
+		return isFinal(state);
+	}
+
+	/**
+	 * Simulates the DFA on everything a reader produces, reading it in
+	 * chunks of CHUNK_SIZE chars, so the input never has to fit in memory.
+	 * Reading stops early once the input can no longer be accepted, unless
+	 * all that has been read is "e", which might still be the empty string.
+	 * The reader is not closed. As with accepts(CharSequence), an input of
+	 * just "e" stands for the empty string.
+	 * @param input the reader to match
+	 * @return true if the input is in the language of the DFA and false otherwise
+	 * @throws IOException if the reader fails
+	 */
+	public boolean accepts(Reader input) throws IOException{
+		char[] buffer = new char[CHUNK_SIZE];
+		int state = start;
+		long total = 0;
+		char first = 0;
+		int read;
+		// keep reading while the input so far is just "e", even if the DFA
+		// has died, since it only stands for the empty string if nothing follows
+		while((state >= 0 || (total == 1 && first == 'e'))
+				&& (read = input.read(buffer, 0, buffer.length)) != -1){
+			if(total == 0 && read > 0){
+				first = buffer[0];
+			}
+			total += read;
+			state = run(state, buffer, 0, read);
+		}
+		if(total == 1 && first == 'e'){
+			return isFinal(start);
+		}
+		return isFinal(state);
+	}
+
+	/**
+	 * Simulates the DFA on everything a channel produces, decoding it with
+	 * the given charset in chunks of CHUNK_SIZE bytes, so the input never
+	 * has to fit in memory. Reading stops early once the input can no
+	 * longer be accepted, unless all that has been read is "e", which might
+	 * still be the empty string. The channel is not closed. As with
+	 * accepts(CharSequence), an input of just "e" stands for the empty string.
+	 * @param input the channel to match
+	 * @param charset the charset the bytes are encoded in
+	 * @return true if the input is in the language of the DFA and false otherwise
+	 * @throws IOException if the channel fails or the bytes can't be decoded
+	 */
+	public boolean accepts(ReadableByteChannel input, Charset charset) throws IOException{
+		CharsetDecoder decoder = charset.newDecoder();
+		ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+		CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+		int state = start;
+		long total = 0;
+		char first = 0;
+		boolean done = false;
+
+		// keep reading while the input so far is just "e", even if the DFA
+		// has died, since it only stands for the empty string if nothing follows
+		while(state >= 0 || (total == 1 && first == 'e')){
+			if(!done && input.read(bytes) == -1){
+				done = true;
+			}
+			bytes.flip();
+			CoderResult result = decoder.decode(bytes, chars, done);
+			if(done && result.isUnderflow()){
+				result = decoder.flush(chars);
+			}
+			if(result.isError()){
+				result.throwException();
+			}
+			bytes.compact();
+
+			// step over whatever was decoded, and carry the state on
+			chars.flip();
+			if(total == 0 && chars.hasRemaining()){
+				first = chars.get(0);
+			}
+			total += chars.remaining();
+			state = run(state, chars.array(), 0, chars.remaining());
+			chars.clear();
+
+			if(done && result.isUnderflow()){
+				break;
+			}
+		}
+		if(total == 1 && first == 'e'){
+			return isFinal(start);
+		}
+		return isFinal(state);
+	}
+
+	/**
+	 * Moves the DFA from a state over a run of characters. Feeding input to
+	 * this a piece at a time, passing the state along, gives the same state
+	 * as running over all of it at once, so input can be matched as it arrives.
+	 * @param state the state to start from, or -1
+	 * @param chars the characters
+	 * @param offset where in chars to start
+	 * @param length how many characters to read
+	 * @return the state reached, or -1 if the input can no longer be accepted
+	 */
+	public int run(int state, char[] chars, int offset, int length){
+		int end = offset + length;
+		for(int i = offset; i < end && state >= 0; i++){
+			char c = chars[i];
+			state = table[state * classCount + (c < classOf.length ? classOf[c] : 0)];
+		}
+		return state;
+	}
+
+	/**
+	 * The transition table, for matchers in this package. It must not be changed.
+	 * @return the transition table
+	 */
+	int[] table(){
+		return table;
+	}
+
+	/**
+	 * The char to class lookup table, for this package. It must not be changed.
+	 * @return the class of every character, indexed by char
+	 */
+	int[] classTable(){
+		return classOf;
+	}
+
+	/**
+	 * The final state bitset, for this package. It must not be changed.
+	 * @return the bitset of final states
+	 */
+	long[] finals(){
+		return finals;
+	}
+
+	/**
+	 * Moves the DFA from a state on one character.
+	 * @param state the state to move from, or -1
+	 * @param c the character read
+	 * @return the next state, or -1 if the input can no longer be accepted
+	 */
+	public int step(int state, char c){
+		if(state < 0){
+			return -1;
+		}
+		return table[state * classCount + (c < classOf.length ? classOf[c] : 0)];
+	}
+
+	/**
+	 * Whether a state is final
+	 * @param state the state, or -1
+	 * @return true if the state is final
+	 */
+	public boolean isFinal(int state){
+		return state >= 0 && (finals[state >>> 6] & (1L << state)) != 0;
+	}
+
+	/**
+	 * Getter for the start state
+	 * @return the number of the start state
+	 */
+	public int getStartState(){
+		return start;
+	}
+
+	/**
+	 * Getter for the number of states
+	 * @return the number of states
+	 */
+	public int getStateCount(){
+		return table.length / classCount;
+	}
+
+	/**
+	 * Getter for the number of symbol classes
+	 * @return the number of classes, including class 0 for characters outside the alphabet
+	 */
+	public int getClassCount(){
+		return classCount;
+	}
+
+	/**
+	 * The class a character belongs to
+	 * @param c the character
+	 * @return its class, 0 if it is outside the alphabet
+	 */
+	public int classOf(char c){
+		return c < classOf.length ? classOf[c] : 0;
+	}
+}
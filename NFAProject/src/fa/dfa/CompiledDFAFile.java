@@ -0,0 +1,171 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a CompiledDFA to a compact binary file, and loads it back, so a
+ * DFA only has to be built once. The file is a fixed header followed by
+ * the DFA's tables, all little endian:
+ *
+ *	offset 0	int	magic number, the bytes "CDFA"
+ *	offset 4	int	format version, currently 1
+ *	offset 8	int	start state
+ *	offset 12	int	number of symbol classes, including class 0
+ *	offset 16	int	number of states
+ *	offset 20	int	length of the char -> class table
+ *	offset 24	int	number of longs in the final state bitset
+ *	offset 28	int	CRC32 of everything after the header
+ *	offset 32	int[]	the char -> class table
+ *		int[]	the transition table, state * classes + class -> state, or -1
+ *		long[]	the final state bitset, starting on a multiple of 8 bytes
+ *
+ * Loading maps the file and copies each table out of the mapping in one
+ * bulk read, so it costs little more than the page cache already holding
+ * the file. Files from a newer version of the format, or that fail their
+ * checksum, are refused.
+ * @author James Souder and Jason Egbert
+ */
+public final class CompiledDFAFile {
+	// The bytes "CDFA", read as a little endian int
+	public static final int MAGIC = 0x41464443;
+	// The version of the format written
+	public static final int VERSION = 1;
+
+	// Size of the header, in bytes
+	private static final int HEADER_SIZE = 32;
+
+	private CompiledDFAFile(){
+	}
+
+	/**
+	 * Writes a compiled DFA to a file, replacing anything already there.
+	 * @param dfa the DFA to save
+	 * @param file the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(CompiledDFA dfa, Path file) throws IOException{
+		int[] classOf = dfa.classTable();
+		int[] table = dfa.table();
+		long[] finals = dfa.finals();
+
+		long size = bodySize(classOf.length, table.length, finals.length);
+		if(size > Integer.MAX_VALUE - HEADER_SIZE){
+			throw new IllegalArgumentException("DFA too large to save: " + size + " bytes");
+		}
+
+		ByteBuffer body = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+		body.asIntBuffer().put(classOf).put(table);
+		body.position((int) finalsOffset(classOf.length, table.length));
+		body.asLongBuffer().put(finals);
+		body.rewind();
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		body.rewind();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(dfa.getStartState())
+				.putInt(dfa.getClassCount()).putInt(dfa.getStateCount())
+				.putInt(classOf.length).putInt(finals.length).putInt((int) crc.getValue());
+		header.flip();
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			ByteBuffer[] buffers = {header, body};
+			while(body.hasRemaining()){
+				channel.write(buffers);
+			}
+		}
+	}
+
+	/**
+	 * Loads a compiled DFA from a file written by write().
+	 * @param file the file to read
+	 * @return the DFA
+	 * @throws IOException if the file can't be read, or isn't a valid compiled DFA file
+	 */
+	public static CompiledDFA read(Path file) throws IOException{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			long fileSize = channel.size();
+			if(fileSize < HEADER_SIZE){
+				throw new IOException("Not a compiled DFA file: " + file);
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+
+			if(map.getInt(0) != MAGIC){
+				throw new IOException("Not a compiled DFA file: " + file);
+			}
+			int version = map.getInt(4);
+			if(version != VERSION){
+				throw new IOException("Unsupported compiled DFA format version " + version + ": " + file);
+			}
+			int start = map.getInt(8);
+			int classCount = map.getInt(12);
+			int stateCount = map.getInt(16);
+			int classOfLength = map.getInt(20);
+			int finalsLength = map.getInt(24);
+			int checksum = map.getInt(28);
+
+			if(classCount < 1 || stateCount < 1 || classOfLength < 0 || finalsLength < 0
+					|| (long) stateCount * classCount > Integer.MAX_VALUE){
+				throw new IOException("Corrupt compiled DFA file: " + file);
+			}
+			int tableLength = stateCount * classCount;
+			long size = bodySize(classOfLength, tableLength, finalsLength);
+			if(fileSize != HEADER_SIZE + size){
+				throw new IOException("Compiled DFA file has the wrong size: " + file);
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(map.slice(HEADER_SIZE, (int) size));
+			if((int) crc.getValue() != checksum){
+				throw new IOException("Compiled DFA file fails its checksum: " + file);
+			}
+
+			int[] classOf = new int[classOfLength];
+			int[] table = new int[tableLength];
+			long[] finals = new long[finalsLength];
+			map.position(HEADER_SIZE);
+			map.asIntBuffer().get(classOf).get(table);
+			map.position(HEADER_SIZE + (int) finalsOffset(classOfLength, tableLength));
+			map.asLongBuffer().get(finals);
+
+			try{
+				CompiledDFA.check(classOf, classCount, table, finals, start);
+			} catch(IllegalArgumentException e){
+				throw new IOException("Corrupt compiled DFA file: " + file + ": " + e.getMessage(), e);
+			}
+			return new CompiledDFA(classOf, classCount, table, finals, start);
+		}
+	}
+
+	/**
+	 * Where the final state bitset starts, counting from the end of the header
+	 * @param classOfLength length of the char -> class table
+	 * @param tableLength length of the transition table
+	 * @return the offset in bytes
+	 */
+	private static long finalsOffset(int classOfLength, int tableLength){
+		long ints = 4L * classOfLength + 4L * tableLength;
+		return (ints + 7) & ~7L;
+	}
+
+	/**
+	 * Size of everything after the header
+	 * @param classOfLength length of the char -> class table
+	 * @param tableLength length of the transition table
+	 * @param finalsLength number of longs in the final state bitset
+	 * @return the size in bytes
+	 */
+	private static long bodySize(int classOfLength, int tableLength, int finalsLength){
+		return finalsOffset(classOfLength, tableLength) + 8L * finalsLength;
+	}
+}
@@ -1,10 +1,15 @@
 package fa.dfa;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
 
 import fa.FAInterface;
 import fa.State;
+import fa.SymbolClasses;
 
 /**
  * Implementation of DFA class to be used
@@ -138,6 +143,272 @@ public class DFA implements FAInterface, DFAInterface{
 		return ret;
 	}
 
+	/**
+	 * Builds the minimal DFA for the same language, using Hopcroft's
+	 * partition refinement, which takes O(n k log n) time for n states
+	 * and k symbols. States that can't be reached from the start state
+	 * are dropped, and equivalent states are merged into one, named after
+	 * whichever of them was added to this DFA first. Missing transitions
+	 * are treated as going to a dead state; they stay missing in the
+	 * result unless the dead state merges with an existing one.
+	 * This DFA is left unchanged.
+	 * @return a new, minimal DFA
+	 */
+	public DFA minimize(){
+		// number the states reachable from the start state, in the
+		// order they were added, with one extra id for the dead state
+		Map<DFAState, Integer> ids = new HashMap<DFAState, Integer>();
+		Set<DFAState> reachable = new HashSet<DFAState>();
+		LinkedList<DFAState> queue = new LinkedList<DFAState>();
+		char[] abc = new char[ordAbc.size()];
+		int k = 0;
+		for(char c : ordAbc){
+			abc[k++] = c;
+		}
+		reachable.add(start);
+		queue.add(start);
+		while(!queue.isEmpty()){
+			DFAState s = queue.remove();
+			for(char c : abc){
+				DFAState to = s.getTo(c);
+				if(to != null && reachable.add(to)){
+					queue.add(to);
+				}
+			}
+		}
+		DFAState[] byId = new DFAState[reachable.size()];
+		for(DFAState s : states){
+			if(reachable.contains(s)){
+				byId[ids.size()] = s;
+				ids.put(s, ids.size());
+			}
+		}
+		int dead = byId.length;
+		int n = dead + 1;
+
+		// refine over symbol classes rather than single symbols, since
+		// symbols in the same class can't split any block
+		SymbolClasses classes = symbolClasses(ids, byId);
+		k = classes.getClassCount() - 1;
+
+		// transitions by id, and the predecessors of every state on every
+		// symbol, stored as inverse adjacency arrays
+		int[][] delta = new int[k][n];
+		int[][] predStart = new int[k][n + 2];
+		int[][] preds = new int[k][n];
+		for(int a = 0; a < k; a++){
+			for(int s = 0; s < n; s++){
+				DFAState to = s == dead ? null : byId[s].getTo(classes.representative(a + 1));
+				delta[a][s] = to == null ? dead : ids.get(to);
+				predStart[a][delta[a][s] + 2]++;
+			}
+			for(int s = 0; s < n; s++){
+				predStart[a][s + 2] += predStart[a][s + 1];
+			}
+			for(int s = 0; s < n; s++){
+				preds[a][predStart[a][delta[a][s] + 1]++] = s;
+			}
+		}
+
+		// the partition: the states of block b are elems[first[b]] up to
+		// elems[end[b]], and the first marked[b] of them are marked
+		int[] elems = new int[n];
+		int[] loc = new int[n];
+		int[] blockOf = new int[n];
+		int[] first = new int[n];
+		int[] end = new int[n];
+		int[] marked = new int[n];
+		int blocks = 0;
+
+		// start from final and non-final states
+		int next = 0;
+		for(int pass = 0; pass < 2; pass++){
+			int begin = next;
+			for(int s = 0; s < n; s++){
+				boolean isFinal = s != dead && byId[s].isFinal();
+				if(isFinal == (pass == 0)){
+					elems[next] = s;
+					loc[s] = next++;
+					blockOf[s] = blocks;
+				}
+			}
+			if(next > begin){
+				first[blocks] = begin;
+				end[blocks++] = next;
+			}
+		}
+
+		// splitters still to process, as block * k + symbol
+		boolean[][] waiting = new boolean[n][k];
+		int[] work = new int[n * k];
+		int workSize = 0;
+		int smallest = blocks == 2 && end[1] - first[1] < end[0] - first[0] ? 1 : 0;
+		for(int a = 0; a < k; a++){
+			waiting[smallest][a] = true;
+			work[workSize++] = smallest * k + a;
+		}
+
+		int[] splitters = new int[n];
+		int[] touched = new int[n];
+		while(workSize > 0){
+			int splitter = work[--workSize];
+			int b = splitter / k;
+			int a = splitter % k;
+			waiting[b][a] = false;
+
+			// collect every state that goes into block b on a
+			int count = 0;
+			for(int i = first[b]; i < end[b]; i++){
+				int s = elems[i];
+				for(int j = predStart[a][s]; j < predStart[a][s + 1]; j++){
+					splitters[count++] = preds[a][j];
+				}
+			}
+
+			// mark them, moving each to the front of its own block
+			int touchedCount = 0;
+			for(int i = 0; i < count; i++){
+				int s = splitters[i];
+				int c = blockOf[s];
+				if(loc[s] < first[c] + marked[c]){
+					continue;
+				}
+				if(marked[c] == 0){
+					touched[touchedCount++] = c;
+				}
+				int to = first[c] + marked[c]++;
+				int other = elems[to];
+				elems[to] = s;
+				elems[loc[s]] = other;
+				loc[other] = loc[s];
+				loc[s] = to;
+			}
+
+			// split every block that was only partly marked
+			for(int i = 0; i < touchedCount; i++){
+				int c = touched[i];
+				int split = first[c] + marked[c];
+				marked[c] = 0;
+				if(split == end[c]){
+					continue;
+				}
+				int nb = blocks++;
+				first[nb] = first[c];
+				end[nb] = split;
+				first[c] = split;
+				for(int j = first[nb]; j < end[nb]; j++){
+					blockOf[elems[j]] = nb;
+				}
+				for(int d = 0; d < k; d++){
+					int smaller = end[nb] - first[nb] <= end[c] - first[c] ? nb : c;
+					int add = waiting[c][d] ? nb : smaller;
+					if(!waiting[add][d]){
+						waiting[add][d] = true;
+						work[workSize++] = add * k + d;
+					}
+				}
+			}
+		}
+
+		// one state per block, named after its first original state
+		DFA min = new DFA();
+		DFAState[] blockState = new DFAState[blocks];
+		for(int s = 0; s < dead; s++){
+			int b = blockOf[s];
+			if(blockState[b] == null){
+				blockState[b] = new DFAState(byId[s].getName(), byId[s].isFinal());
+				min.addState(blockState[b]);
+			}
+		}
+		min.start = blockState[blockOf[ids.get(start)]];
+		for(char c : abc){
+			min.ordAbc.add(c);
+		}
+		for(int s = 0; s < dead; s++){
+			DFAState from = blockState[blockOf[s]];
+			for(int a = 0; a < k; a++){
+				DFAState to = blockState[blockOf[delta[a][s]]];
+				if(to != null && from.getTo(classes.representative(a + 1)) == null){
+					for(char c : classes.getMembers(a + 1)){
+						from.addTransition(c, to);
+					}
+				}
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Compiles the DFA into a CompiledDFA, an immutable form with a flat
+	 * transition table that can match input without any boxing or hashing.
+	 * States are numbered in the order they were added, and the table has
+	 * one column per symbol class rather than per symbol. Missing
+	 * transitions reject.
+	 * @return the compiled DFA
+	 */
+	public CompiledDFA compile(){
+		Map<DFAState, Integer> ids = new HashMap<DFAState, Integer>();
+		DFAState[] byId = new DFAState[states.size()];
+		for(DFAState s : states){
+			byId[ids.size()] = s;
+			ids.put(s, ids.size());
+		}
+		SymbolClasses classes = symbolClasses(ids, byId);
+		int classCount = classes.getClassCount();
+
+		// class 0 is for characters outside the alphabet, and always rejects
+		int[] table = new int[byId.length * classCount];
+		long[] finals = new long[(byId.length + 63) >>> 6];
+		for(int id = 0; id < byId.length; id++){
+			table[id * classCount] = -1;
+			for(int c = 1; c < classCount; c++){
+				DFAState to = byId[id].getTo(classes.representative(c));
+				table[id * classCount + c] = to == null ? -1 : ids.get(to);
+			}
+			if(byId[id].isFinal()){
+				finals[id >>> 6] |= 1L << id;
+			}
+		}
+		return new CompiledDFA(classes.toLookupTable(), classCount, table, finals, ids.get(start));
+	}
+
+	/**
+	 * Works out the symbol classes of the DFA: the groups of symbols that
+	 * take every state to the same place.
+	 * @return the symbol classes
+	 */
+	public SymbolClasses getSymbolClasses(){
+		Map<DFAState, Integer> ids = new HashMap<DFAState, Integer>();
+		DFAState[] byId = new DFAState[states.size()];
+		for(DFAState s : states){
+			byId[ids.size()] = s;
+			ids.put(s, ids.size());
+		}
+		return symbolClasses(ids, byId);
+	}
+
+	/**
+	 * Groups the alphabet into symbol classes, comparing the column of
+	 * every symbol in the transition table over the given states.
+	 * @param ids the number of every state
+	 * @param byId the states, by number; their transitions must stay within them
+	 * @return the symbol classes
+	 */
+	private SymbolClasses symbolClasses(Map<DFAState, Integer> ids, DFAState[] byId){
+		char[] abc = new char[ordAbc.size()];
+		int[][] columns = new int[abc.length][byId.length];
+		int a = 0;
+		for(char c : ordAbc){
+			abc[a] = c;
+			for(int s = 0; s < byId.length; s++){
+				DFAState to = byId[s].getTo(c);
+				columns[a][s] = to == null ? -1 : ids.get(to);
+			}
+			a++;
+		}
+		return SymbolClasses.group(abc, columns);
+	}
+
 	@Override
 	public Set<DFAState> getStates() {
 		return states;
@@ -0,0 +1,305 @@
+package fa.dfa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Turns a CompiledDFA into a class of its own, with the transition
+ * function written out as code. Each state is a loop reading characters,
+ * with a switch on the character saying where to go next; a transition
+ * back to the same state just carries on with the loop. There is no table
+ * to look up, and the JIT compiles each switch to a jump table.
+ *
+ * This only pays off when the DFA stays in a state for runs of characters,
+ * as a*b*c*d* does on long runs of each letter: matching is then several
+ * times faster than CompiledDFA.accepts. Every move to another state is a
+ * jump back to the outer switch, which costs more than a table lookup, so
+ * a DFA that changes state on most characters, even in a regular rhythm
+ * like (abcd)*, is matched faster by the table. compile() only generates
+ * code for DFAs where most states that read anything loop back to
+ * themselves; Bench has GeneratedDFA benchmarks comparing the two.
+ *
+ * HotSpot won't JIT compile a method of more than 8000 bytes of bytecode,
+ * and runs it interpreted, many times slower than the table. The switches
+ * take most of the space, one case per character a state can read, so
+ * compile() works out how big they will be and doesn't generate DFAs
+ * whose method would come to more than MAX_METHOD_BYTES.
+ *
+ * The source is compiled in memory with the system Java compiler and
+ * loaded as a hidden class, which is unloaded again once nothing uses it.
+ * Where there is no compiler, as on a plain JRE, or the DFA isn't worth
+ * generating, compile() quietly returns a matcher that runs the
+ * CompiledDFA instead, so callers never have to check.
+ * @author James Souder and Jason Egbert
+ */
+public final class GeneratedDFA {
+	// Largest estimated size of the generated test() method, in bytes of
+	// bytecode. HotSpot won't JIT compile a method over 8000 bytes, and the
+	// estimate is a little rough, so this leaves some room.
+	public static final int MAX_METHOD_BYTES = 7000;
+
+	// Numbers the generated classes, so their names don't clash
+	private static final AtomicLong COUNTER = new AtomicLong();
+
+	private GeneratedDFA(){
+	}
+
+	/**
+	 * Whether compile() can generate code here, that is, whether there is
+	 * a system Java compiler
+	 * @return true if DFAs can be turned into code
+	 */
+	public static boolean isAvailable(){
+		return ToolProvider.getSystemJavaCompiler() != null;
+	}
+
+	/**
+	 * Makes a matcher for the DFA, as generated code if that is possible
+	 * and likely to be faster, and by running the DFA's tables otherwise.
+	 * Either way, test() gives the same answer as dfa.accepts(), including
+	 * reading "e" as the empty string.
+	 * @param dfa the DFA
+	 * @return a matcher for the language of the DFA
+	 */
+	public static Predicate<CharSequence> compile(CompiledDFA dfa){
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null || !worthGenerating(dfa)){
+			return dfa::accepts;
+		}
+
+		String name = "Generated" + COUNTER.incrementAndGet();
+		byte[] bytes = compileSource(compiler, name, generateSource(dfa, name));
+		if(bytes == null){
+			return dfa::accepts;
+		}
+
+		try{
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			@SuppressWarnings("unchecked")
+			Predicate<CharSequence> matcher = (Predicate<CharSequence>) lookup.lookupClass()
+					.getDeclaredConstructor().newInstance();
+			return matcher;
+		} catch(ReflectiveOperationException | LinkageError e){
+			return dfa::accepts;
+		}
+	}
+
+	/**
+	 * Writes the Java source of a class matching the DFA's language. The
+	 * class is in this package, has a public no argument constructor and
+	 * implements Predicate of CharSequence.
+	 * @param dfa the DFA
+	 * @param className the simple name of the class
+	 * @return the source
+	 */
+	public static String generateSource(CompiledDFA dfa, String className){
+		int classCount = dfa.getClassCount();
+		int[] table = dfa.table();
+		List<List<Character>> members = classMembers(dfa);
+
+		StringBuilder out = new StringBuilder();
+		out.append("package fa.dfa;\n\n");
+		out.append("public final class ").append(className)
+				.append(" implements java.util.function.Predicate<CharSequence> {\n");
+		out.append("\tpublic boolean test(CharSequence input){\n");
+		out.append("\t\tint length = input.length();\n");
+		out.append("\t\tif(length == 1 && input.charAt(0) == 'e'){\n");
+		out.append("\t\t\tlength = 0;\n");
+		out.append("\t\t}\n");
+		out.append("\t\tint i = 0;\n");
+		out.append("\t\tint state = ").append(dfa.getStartState()).append(";\n");
+		out.append("\t\tstates: while(true){\n");
+		out.append("\t\t\tswitch(state){\n");
+
+		// each state reads characters in a loop of its own, which it only
+		// leaves to move to another state, so self loops stay tight
+		for(int s = 0; s < dfa.getStateCount(); s++){
+			Map<Integer, List<Character>> byTarget = new LinkedHashMap<Integer, List<Character>>();
+			for(int c = 1; c < classCount; c++){
+				int to = table[s * classCount + c];
+				if(to >= 0){
+					byTarget.computeIfAbsent(to, k -> new ArrayList<Character>()).addAll(members.get(c));
+				}
+			}
+
+			out.append("\t\t\tcase ").append(s).append(":\n");
+			out.append("\t\t\t\twhile(i < length){\n");
+			out.append("\t\t\t\t\tswitch(input.charAt(i++)){\n");
+			for(Map.Entry<Integer, List<Character>> target : byTarget.entrySet()){
+				List<Character> chars = target.getValue();
+				Collections.sort(chars);
+				out.append("\t\t\t\t\t");
+				for(char c : chars){
+					out.append("case ").append((int) c).append(": ");
+				}
+				if(target.getKey() == s){
+					out.append("continue;\n");
+				} else {
+					out.append("state = ").append(target.getKey()).append("; continue states;\n");
+				}
+			}
+			out.append("\t\t\t\t\tdefault: return false;\n");
+			out.append("\t\t\t\t\t}\n");
+			out.append("\t\t\t\t}\n");
+			out.append("\t\t\t\treturn ").append(dfa.isFinal(s)).append(";\n");
+		}
+		out.append("\t\t\tdefault:\n");
+		out.append("\t\t\t\treturn false;\n");
+		out.append("\t\t\t}\n");
+		out.append("\t\t}\n");
+		out.append("\t}\n");
+		out.append("}\n");
+		return out.toString();
+	}
+
+	/**
+	 * Whether generated code is likely to match faster than the DFA's
+	 * table: the test() method must be small enough for the JIT to compile,
+	 * and more than half the states that read any characters must loop
+	 * back to themselves on some of them.
+	 * @param dfa the DFA
+	 * @return true if the DFA should be turned into code
+	 */
+	public static boolean worthGenerating(CompiledDFA dfa){
+		if(estimateMethodBytes(dfa) > MAX_METHOD_BYTES){
+			return false;
+		}
+		int reading = 0;
+		int looping = 0;
+		for(int s = 0; s < dfa.getStateCount(); s++){
+			boolean reads = false;
+			boolean loops = false;
+			for(int c = 1; c < dfa.getClassCount(); c++){
+				int to = dfa.table()[s * dfa.getClassCount() + c];
+				reads |= to >= 0;
+				loops |= to == s;
+			}
+			if(reads){
+				reading++;
+			}
+			if(loops){
+				looping++;
+			}
+		}
+		return looping * 2 > reading;
+	}
+
+	/**
+	 * Estimates the size of the test() method generateSource writes for a
+	 * DFA, in bytes of bytecode. Each state's switch is sized the way javac
+	 * sizes it, as a tableswitch over the range of its characters when they
+	 * are dense enough and a lookupswitch otherwise; the code around the
+	 * switches is a few bytes per state and per target.
+	 * @param dfa the DFA
+	 * @return the estimated size of the method
+	 */
+	static int estimateMethodBytes(CompiledDFA dfa){
+		int classCount = dfa.getClassCount();
+		int[] table = dfa.table();
+		List<List<Character>> members = classMembers(dfa);
+		long bytes = 32 + 4L * dfa.getStateCount();    // the outer switch, and the code around it
+		for(int s = 0; s < dfa.getStateCount(); s++){
+			int lo = Integer.MAX_VALUE;
+			int hi = Integer.MIN_VALUE;
+			int labels = 0;
+			Set<Integer> targets = new HashSet<Integer>();
+			for(int c = 1; c < classCount; c++){
+				int to = table[s * classCount + c];
+				if(to >= 0 && !members.get(c).isEmpty()){
+					targets.add(to);
+					labels += members.get(c).size();
+					lo = Math.min(lo, members.get(c).get(0));
+					hi = Math.max(hi, members.get(c).get(members.get(c).size() - 1));
+				}
+			}
+
+			// javac's choice between the two switch instructions
+			long tableCost = 4 + ((long) hi - lo + 1) + 3 * 3;
+			long lookupCost = 3 + 2L * labels + 3L * labels;
+			boolean tableSwitch = labels > 0 && tableCost <= lookupCost;
+			bytes += 16 + (tableSwitch ? 4 * ((long) hi - lo + 1) : 8L * labels);
+			bytes += 24 + 8L * targets.size();
+		}
+		return (int) Math.min(bytes, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * The characters in each symbol class of a DFA
+	 * @param dfa the DFA
+	 * @return the characters of each class, indexed by class
+	 */
+	private static List<List<Character>> classMembers(CompiledDFA dfa){
+		List<List<Character>> members = new ArrayList<List<Character>>();
+		for(int c = 0; c < dfa.getClassCount(); c++){
+			members.add(new ArrayList<Character>());
+		}
+		int[] classOf = dfa.classTable();
+		for(int c = 0; c < classOf.length; c++){
+			if(classOf[c] != 0){
+				members.get(classOf[c]).add((char) c);
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Compiles one class from source, in memory
+	 * @param compiler the Java compiler
+	 * @param name the simple name of the class, in this package
+	 * @param source its source
+	 * @return the class file, or null if it didn't compile
+	 */
+	private static byte[] compileSource(JavaCompiler compiler, String name, String source){
+		ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+		JavaFileObject input = new SimpleJavaFileObject(
+				URI.create("string:///fa/dfa/" + name + ".java"), JavaFileObject.Kind.SOURCE){
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors){
+				return source;
+			}
+		};
+
+		// closing the forwarding manager closes the standard one it wraps,
+		// along with any archives it opened
+		StringWriter errors = new StringWriter();
+		try(JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(
+				compiler.getStandardFileManager(null, null, null)){
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className,
+					JavaFileObject.Kind kind, FileObject sibling){
+				return new SimpleJavaFileObject(URI.create("bytes:///" + className + ".class"), kind){
+					@Override
+					public OutputStream openOutputStream(){
+						return classFile;
+					}
+				};
+			}
+		}){
+			boolean compiled = compiler.getTask(errors, files, null, List.of("-g:none"), null, List.of(input)).call();
+			return compiled ? classFile.toByteArray() : null;
+		} catch(IOException e){
+			return null;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package fa.dfa;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Runs a CompiledDFA straight over a memory mapped file, without reading
+ * the file into Strings. Bytes are decoded as ISO-8859-1, so every byte is
+ * one character; ASCII text is a subset of that. Each byte is turned into
+ * a symbol class with a 256 entry table and stepped through the DFA's
+ * transition table directly, and the file's pages come from the OS page
+ * cache. Files larger than 2 GB are mapped a window at a time.
+ *
+ * Lines end at '\n', with an optional '\r' before it, the same lines a
+ * Scanner would give NFADriver or REDriver. As there, a line of just "e"
+ * stands for the empty string.
+ * @author James Souder and Jason Egbert
+ */
+public final class MappedFileMatcher {
+	// Most bytes mapped at once
+	private static final long WINDOW = 1L << 30;
+
+	private final int[] table;	// the DFA's transition table
+	private final int classCount;	// number of symbol classes of the DFA
+	private final int[] byteClass;	// byte -> symbol class
+	private final CompiledDFA dfa;	// the DFA being run
+
+	/**
+	 * Constructs a matcher for the given DFA.
+	 * @param dfa the DFA to run over files
+	 */
+	public MappedFileMatcher(CompiledDFA dfa){
+		this.dfa = dfa;
+		this.table = dfa.table();
+		this.classCount = dfa.getClassCount();
+		this.byteClass = new int[256];
+		for(int b = 0; b < 256; b++){
+			byteClass[b] = dfa.classOf((char) b);
+		}
+	}
+
+	/**
+	 * Tests every line of a file against the DFA.
+	 * @param file the file to read
+	 * @return the byte offsets at which the accepted lines start, in order
+	 * @throws IOException if the file can't be mapped
+	 */
+	public long[] matchLines(Path file) throws IOException{
+		long[] matches = new long[16];
+		int count = 0;
+		int start = dfa.getStartState();
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			long size = channel.size();
+			int state = start;
+			int beforeReturn = start;	// state before the last byte, in case it was a '\r'
+			int previous = -1;		// the last byte of the line so far, -1 if none
+			int first = -1;			// the first byte of the line
+			long lineStart = 0;
+			long lineLength = 0;
+
+			for(long position = 0; position < size; position += WINDOW){
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						position, Math.min(WINDOW, size - position));
+				int limit = buffer.limit();
+				for(int i = 0; i < limit; i++){
+					int b = buffer.get(i) & 0xFF;
+					if(b == '\n'){
+						if(lineEnds(state, beforeReturn, previous, first, lineLength)){
+							if(count == matches.length){
+								matches = Arrays.copyOf(matches, count * 2);
+							}
+							matches[count++] = lineStart;
+						}
+						state = start;
+						previous = -1;
+						lineStart = position + i + 1;
+						lineLength = 0;
+						continue;
+					}
+					if(lineLength == 0){
+						first = b;
+					}
+					lineLength++;
+					previous = b;
+					beforeReturn = state;
+					if(state >= 0){
+						state = table[state * classCount + byteClass[b]];
+					}
+				}
+			}
+
+			// the last line may not end with a '\n'
+			if(lineLength > 0 && lineEnds(state, beforeReturn, previous, first, lineLength)){
+				if(count == matches.length){
+					matches = Arrays.copyOf(matches, count * 2);
+				}
+				matches[count++] = lineStart;
+			}
+		}
+		return Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * Decides whether a finished line is accepted. A '\r' at the end of the
+	 * line is not part of it, so the state from before it is used instead.
+	 * @param state the state after the last byte of the line
+	 * @param beforeReturn the state before the last byte of the line
+	 * @param last the last byte of the line
+	 * @param first the first byte of the line
+	 * @param length the number of bytes in the line
+	 * @return true if the line is accepted
+	 */
+	private boolean lineEnds(int state, int beforeReturn, int last, int first, long length){
+		if(last == '\r'){
+			state = beforeReturn;
+			length--;
+		}
+		if(length == 1 && first == 'e'){
+			state = dfa.getStartState();
+		}
+		return dfa.isFinal(state);
+	}
+
+	/**
+	 * Tests a whole file against the DFA, as one input.
+	 * @param file the file to read
+	 * @return true if the contents of the file are in the language of the DFA
+	 * @throws IOException if the file can't be mapped
+	 */
+	public boolean accepts(Path file) throws IOException{
+		int start = dfa.getStartState();
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			long size = channel.size();
+			int state = start;
+			for(long position = 0; position < size && state >= 0; position += WINDOW){
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						position, Math.min(WINDOW, size - position));
+				int limit = buffer.limit();
+				for(int i = 0; i < limit && state >= 0; i++){
+					state = table[state * classCount + byteClass[buffer.get(i) & 0xFF]];
+				}
+			}
+			if(size == 1 && channel.map(FileChannel.MapMode.READ_ONLY, 0, 1).get(0) == 'e'){
+				state = start;
+			}
+			return dfa.isFinal(state);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed eClosures for every state of an NFA. The empty transitions
+ * are first collapsed into their strongly connected components, since every
+ * state on an empty cycle has the same closure. The components come out of
+ * Tarjan's algorithm in reverse topological order, so each closure can be
+ * built from its own members plus the closures of components that are
+ * already done. All states in a component share one immutable StateSet.
+ *
+ * @author James Souder and Jason Egbert
+ */
+final class ClosureTable {
+    private final StateSet[] closures;  // the eClosure of every state, indexed by id
+
+    /**
+     * Constructs the table from the empty transitions of an NFA, given in
+     * the same adjacency layout the NFA uses: the targets of state id are
+     * row[starts[id]] up to row[starts[id + 1]].
+     *
+     * @param n - the number of states in the NFA
+     * @param starts - where each state's empty transitions start in row
+     * @param row - the targets of every state's empty transitions
+     */
+    ClosureTable(int n, int[] starts, int[] row) {
+        int wordCount = (n + 63) >>> 6;
+        closures = new StateSet[n];
+
+        // bookkeeping for an iterative version of Tarjan's algorithm
+        int[] index = new int[n];       // order in which states were first visited
+        int[] low = new int[n];         // lowest index reachable from each state
+        boolean[] onStack = new boolean[n];
+        int[] sccStack = new int[n];    // states whose component isn't finished yet
+        int sccTop = 0;
+        int[] callStack = new int[n];   // the depth first search path
+        int[] next = new int[n];        // next transition to follow from each state on the path
+        int callTop = 0;
+        int counter = 0;
+        Arrays.fill(index, -1);
+
+        for(int root = 0; root < n; root++) {
+            if(index[root] != -1) {
+                continue;
+            }
+            index[root] = low[root] = counter++;
+            next[root] = starts[root];
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+            callStack[callTop++] = root;
+
+            while(callTop > 0) {
+                int v = callStack[callTop - 1];
+
+                if(next[v] < starts[v + 1]) {
+                    // follow the next empty transition out of v
+                    int w = row[next[v]++];
+                    if(index[w] == -1) {
+                        index[w] = low[w] = counter++;
+                        next[w] = starts[w];
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                        callStack[callTop++] = w;
+                    } else if(onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                // done with v, pass its low link back to its parent
+                callTop--;
+                if(callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+
+                // v is the root of a component, so pop the component off the stack
+                if(low[v] == index[v]) {
+                    int first = sccTop;
+                    do {
+                        first--;
+                    } while(sccStack[first] != v);
+
+                    // the closure is the members themselves, plus the closure of
+                    // every component they can reach, which is already finished
+                    long[] words = new long[wordCount];
+                    for(int i = first; i < sccTop; i++) {
+                        int member = sccStack[i];
+                        onStack[member] = false;
+                        words[member >>> 6] |= 1L << member;
+                    }
+                    for(int i = first; i < sccTop; i++) {
+                        int member = sccStack[i];
+                        for(int j = starts[member]; j < starts[member + 1]; j++) {
+                            if(closures[row[j]] != null) {
+                                closures[row[j]].orInto(words);
+                            }
+                        }
+                    }
+
+                    StateSet closure = new StateSet(words, StateSet.hash(words));
+                    for(int i = first; i < sccTop; i++) {
+                        closures[sccStack[i]] = closure;
+                    }
+                    sccTop = first;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the eClosure of a state
+     *
+     * @param id - the id of the state
+     * @return the set of states reachable from it on empty transitions, including itself
+     */
+    StateSet get(int id) {
+        return closures[id];
+    }
+}
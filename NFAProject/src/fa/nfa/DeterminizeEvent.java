@@ -0,0 +1,74 @@
+package fa.nfa;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one run of subset construction, by getDFA or
+ * getCompiledDFA. Its duration is the whole run, and its fields are the
+ * numbers DeterminizeStats describes. It is enabled with the default
+ * settings, so a recording started with
+ *
+ *     jcmd pid JFR.start name=fa filename=fa.jfr
+ *
+ * has one for every run, with the stack trace of the caller. When nothing
+ * is recording, getDFA skips the counting and timing altogether.
+ *
+ * @author James Souder and Jason Egbert
+ */
+@Name("fa.nfa.Determinize")
+@Label("NFA Determinization")
+@Category({"Finite Automata", "NFA"})
+@Description("Subset construction of a DFA from an NFA")
+@StackTrace(true)
+final class DeterminizeEvent extends Event {
+    @Label("NFA States")
+    int nfaStates;
+
+    @Label("Symbol Classes")
+    int symbolClasses;
+
+    @Label("DFA States")
+    @Description("Distinct subsets of NFA states reached")
+    int dfaStates;
+
+    @Label("Subsets Interned")
+    long interned;
+
+    @Label("Transitions")
+    @Description("Moves worked out, one per DFA state and symbol class")
+    long transitions;
+
+    @Label("Closure Lookups")
+    long closureLookups;
+
+    @Label("Closure Skips")
+    @Description("States a move landed on that were already in its result")
+    long closureSkips;
+
+    @Label("Peak Subset Size")
+    @Description("Most NFA states in any one DFA state")
+    int peakSubsetSize;
+
+    @Label("Closure Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long closureTime;
+
+    @Label("Move Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long moveTime;
+
+    @Label("Intern Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long internTime;
+
+    @Label("Build Time")
+    @Description("Time spent building the DFA after the search")
+    @Timespan(Timespan.NANOSECONDS)
+    long buildTime;
+}
@@ -0,0 +1,268 @@
+package fa.nfa;
+
+/**
+ * Counts and times the work one run of subset construction did, so a
+ * getDFA or getCompiledDFA that takes too long can be explained: whether
+ * the DFA simply has a lot of states, or each state costs a lot to make.
+ *
+ * The work is split into four phases. Closure is working out the eClosure
+ * of every NFA state, which is done once and reused until the NFA changes,
+ * so it is 0 when the closures were already there. Move is finding the
+ * subset a DFA state goes to on a symbol class, intern is looking that
+ * subset up to find or give it a DFA state id, and build is turning the
+ * finished search into the DFA that is returned.
+ *
+ * The eClosures are looked up from a table rather than searched for, so
+ * a closure lookup is cheap; a closure skip is a state the move landed on
+ * that was already in the result, along with its whole closure, so its
+ * closure didn't need looking up at all.
+ *
+ * Turn collecting on with NFA.setCollectStats, then read the stats of the
+ * last run with NFA.getLastStats. The same numbers go in a
+ * fa.nfa.Determinize event whenever Flight Recorder is recording.
+ *
+ * @author James Souder and Jason Egbert
+ */
+public final class DeterminizeStats {
+    private final long startTime;   // System.nanoTime when the run started
+    private int nfaStates;          // states in the NFA
+    private int symbolClasses;      // symbol classes, not counting class 0
+    private int dfaStates;          // distinct subsets reached, which are the DFA states
+    private long interned;          // subsets looked up in the table, new or not
+    private long transitions;       // moves worked out
+    private long closureLookups;    // eClosures added into a move's result
+    private long closureSkips;      // states a move landed on that were already in its result
+    private int peakSubsetSize;     // most NFA states in any one DFA state
+    private long closureNanos;      // time spent working out the eClosures
+    private long moveNanos;         // time spent in moves
+    private long internNanos;       // time spent interning subsets
+    private long buildNanos;        // time spent building the DFA from the search
+    private long totalNanos;        // time the whole run took
+
+    /**
+     * Constructor for the stats of a run that is starting now.
+     *
+     * @param nfaStates - the number of states in the NFA
+     */
+    DeterminizeStats(int nfaStates) {
+        this.startTime = System.nanoTime();
+        this.nfaStates = nfaStates;
+    }
+
+    /**
+     * Records the phase before the search: the symbol classes found, and
+     * how long the eClosures took if they had to be worked out.
+     *
+     * @param symbolClasses - the number of symbol classes, not counting class 0
+     * @param closureNanos - time spent on the eClosures in this run
+     */
+    void prepared(int symbolClasses, long closureNanos) {
+        this.symbolClasses = symbolClasses;
+        this.closureNanos = closureNanos;
+    }
+
+    /**
+     * Records a closure lookup made by a move
+     */
+    void closureLookup() {
+        closureLookups++;
+    }
+
+    /**
+     * Records a state a move landed on that didn't need its closure looked up
+     */
+    void closureSkip() {
+        closureSkips++;
+    }
+
+    /**
+     * Records one step of the search: a move, and interning the subset it reached.
+     *
+     * @param moveNanos - time the move took
+     * @param internNanos - time interning took, 0 if the subset wasn't interned
+     * @param interned - whether the subset was interned
+     * @param newSize - the size of the subset if it was new to the table, or -1
+     */
+    void step(long moveNanos, long internNanos, boolean interned, int newSize) {
+        this.transitions++;
+        this.moveNanos += moveNanos;
+        this.internNanos += internNanos;
+        if(interned) {
+            this.interned++;
+        }
+        if(newSize > peakSubsetSize) {
+            peakSubsetSize = newSize;
+        }
+    }
+
+    /**
+     * Records the size of the start state, which is interned before the
+     * search starts rather than in a step
+     *
+     * @param size - the number of NFA states in the start state
+     */
+    void started(int size) {
+        interned++;
+        peakSubsetSize = Math.max(peakSubsetSize, size);
+    }
+
+    /**
+     * Records the end of the search and of the run.
+     *
+     * @param dfaStates - the number of distinct subsets reached
+     * @param buildNanos - time spent building the DFA after the search
+     */
+    void finished(int dfaStates, long buildNanos) {
+        this.dfaStates = dfaStates;
+        this.buildNanos = buildNanos;
+        this.totalNanos = System.nanoTime() - startTime;
+    }
+
+    /**
+     * Copies the stats into a Flight Recorder event, ready to commit.
+     *
+     * @param event - the event
+     */
+    void copyInto(DeterminizeEvent event) {
+        event.nfaStates = nfaStates;
+        event.symbolClasses = symbolClasses;
+        event.dfaStates = dfaStates;
+        event.interned = interned;
+        event.transitions = transitions;
+        event.closureLookups = closureLookups;
+        event.closureSkips = closureSkips;
+        event.peakSubsetSize = peakSubsetSize;
+        event.closureTime = closureNanos;
+        event.moveTime = moveNanos;
+        event.internTime = internNanos;
+        event.buildTime = buildNanos;
+    }
+
+    /**
+     * Getter for the number of NFA states
+     *
+     * @return - the number of states in the NFA
+     */
+    public int getNFAStates() {
+        return nfaStates;
+    }
+
+    /**
+     * Getter for the number of symbol classes
+     *
+     * @return - the number of symbol classes, not counting class 0
+     */
+    public int getSymbolClasses() {
+        return symbolClasses;
+    }
+
+    /**
+     * Getter for the number of DFA states
+     *
+     * @return - the number of distinct subsets reached. getDFA counts the
+     * empty subset, which is its dead state; getCompiledDFA leaves it out.
+     */
+    public int getDFAStates() {
+        return dfaStates;
+    }
+
+    /**
+     * Getter for the number of subsets interned
+     *
+     * @return - how many times a subset was looked up in the table, new or not
+     */
+    public long getInterned() {
+        return interned;
+    }
+
+    /**
+     * Getter for the number of transitions worked out
+     *
+     * @return - the number of moves, one per DFA state and symbol class
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * Getter for the number of closure lookups
+     *
+     * @return - how many eClosures moves added into their results
+     */
+    public long getClosureLookups() {
+        return closureLookups;
+    }
+
+    /**
+     * Getter for the number of closure skips
+     *
+     * @return - how many states moves landed on that were already in their results
+     */
+    public long getClosureSkips() {
+        return closureSkips;
+    }
+
+    /**
+     * Getter for the largest subset
+     *
+     * @return - the most NFA states in any one DFA state
+     */
+    public int getPeakSubsetSize() {
+        return peakSubsetSize;
+    }
+
+    /**
+     * Getter for the time spent on the eClosures
+     *
+     * @return - nanoseconds, 0 if they were already worked out
+     */
+    public long getClosureNanos() {
+        return closureNanos;
+    }
+
+    /**
+     * Getter for the time spent in moves
+     *
+     * @return - nanoseconds
+     */
+    public long getMoveNanos() {
+        return moveNanos;
+    }
+
+    /**
+     * Getter for the time spent interning subsets
+     *
+     * @return - nanoseconds
+     */
+    public long getInternNanos() {
+        return internNanos;
+    }
+
+    /**
+     * Getter for the time spent building the DFA after the search
+     *
+     * @return - nanoseconds
+     */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Getter for the time the whole run took
+     *
+     * @return - nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "DeterminizeStats[nfaStates=" + nfaStates + ", symbolClasses=" + symbolClasses
+                + ", dfaStates=" + dfaStates + ", interned=" + interned + ", transitions=" + transitions
+                + ", closureLookups=" + closureLookups + ", closureSkips=" + closureSkips
+                + ", peakSubsetSize=" + peakSubsetSize + ", closureNanos=" + closureNanos
+                + ", moveNanos=" + moveNanos + ", internNanos=" + internNanos
+                + ", buildNanos=" + buildNanos + ", totalNanos=" + totalNanos + "]";
+    }
+}
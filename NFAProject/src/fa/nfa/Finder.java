@@ -0,0 +1,227 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+import fa.State;
+import fa.dfa.CompiledDFA;
+
+/**
+ * Finder searches text for the substrings an NFA accepts, rather than
+ * testing whole strings. Matches are leftmost-longest: of all the matches,
+ * the one starting earliest is picked, and of those starting there, the
+ * longest. Results are given as offsets into the text, and no substrings
+ * are made.
+ *
+ * Two DFAs do the work. The reverse of the NFA, made unanchored, is run
+ * backwards over the text; it is in a final state at exactly the offsets
+ * where some match starts. The NFA itself is then run forwards from a
+ * start offset, and the last offset where it was in a final state is the
+ * end of the longest match.
+ *
+ * The state the backwards DFA is in at an offset is the set of NFA states
+ * from which some match end can still be reached, reading on from that
+ * offset. So the forward scan can stop as soon as none of the NFA states
+ * it is in are in that set, which is right after the end of the longest
+ * match, rather than carrying on until the forward DFA dies. That keeps
+ * each forward scan within its match plus one character, and a whole
+ * search linear in the length of the text. The price is remembering the
+ * backwards state at every offset, an int per character searched.
+ *
+ * Instances never change once built, so they can be shared between threads.
+ *
+ * @author James Souder and Jason Egbert
+ */
+public final class Finder {
+    private CompiledDFA forward;    // the NFA, anchored at the start of a match
+    private CompiledDFA backward;   // the reverse of the NFA, unanchored
+    private long[][] forwardSets;   // the NFA states in each forward state, by NFA state id
+    private long[][] liveSets;      // the NFA states in each backward state, by NFA state id
+
+    /**
+     * Constructs a Finder for the language of the given NFA. The NFA is
+     * not changed.
+     *
+     * @param nfa - the NFA whose matches are to be found
+     */
+    public Finder(NFA nfa) {
+        SubsetTable forwardSubsets = new SubsetTable();
+        this.forward = nfa.getCompiledDFA(forwardSubsets);
+        this.forwardSets = new long[forwardSubsets.size()][];
+        for(int d = 0; d < forwardSets.length; d++) {
+            forwardSets[d] = forwardSubsets.get(d).words();
+        }
+
+        // the reverse has states of its own ids, plus a new start state, so
+        // translate its subsets back to the ids of the NFA by name
+        NFA reversed = nfa.reverse(true);
+        SubsetTable backwardSubsets = new SubsetTable();
+        this.backward = reversed.getCompiledDFA(backwardSubsets);
+        int[] original = new int[reversed.getStates().size()];
+        Arrays.fill(original, -1);
+        for(State state : nfa.getStates()) {
+            original[reversed.idOf(state.getName())] = nfa.idOf(state.getName());
+        }
+        this.liveSets = new long[backwardSubsets.size()][nfa.wordCount()];
+        for(int d = 0; d < liveSets.length; d++) {
+            StateSet subset = backwardSubsets.get(d);
+            for(int id = subset.nextId(0); id >= 0; id = subset.nextId(id + 1)) {
+                if(original[id] >= 0) {
+                    liveSets[d][original[id] >>> 6] |= 1L << original[id];
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the leftmost-longest match that starts at or after an offset.
+     *
+     * @param text - the text to search
+     * @param from - the offset to start searching at, from 0 up to the length of the text
+     * @return the start and end offsets of the match, or null if there isn't one
+     * @throws IndexOutOfBoundsException if from is negative or past the end of the text
+     */
+    public int[] find(CharSequence text, int from) {
+        if(from < 0 || from > text.length()) {
+            throw new IndexOutOfBoundsException("from " + from + ", length " + text.length());
+        }
+
+        // scan backwards to the offset, remembering the last place a match starts
+        int[] states = scanBackward(text, from);
+        int start = -1;
+        for(int i = text.length(); i >= from; i--) {
+            if(backward.isFinal(states[i - from])) {
+                start = i;
+            }
+        }
+
+        if(start < 0) {
+            return null;
+        }
+        return new int[] {start, longest(text, start, states, from)};
+    }
+
+    /**
+     * Finds every leftmost-longest match in the text, none overlapping.
+     * After each match the search carries on from its end, or one
+     * character further if the match was empty.
+     *
+     * @param text - the text to search
+     * @return the start and end offsets of every match, as start, end, start, end, ...
+     */
+    public int[] findAll(CharSequence text) {
+        int length = text.length();
+
+        // one backwards pass finds every offset where a match starts
+        int[] states = scanBackward(text, 0);
+
+        // then take the longest match from each start in turn
+        int[] matches = new int[16];
+        int count = 0;
+        int position = nextStart(states, 0);
+        while(position >= 0) {
+            int end = longest(text, position, states, 0);
+            if(count + 2 > matches.length) {
+                matches = Arrays.copyOf(matches, matches.length * 2);
+            }
+            matches[count++] = position;
+            matches[count++] = end;
+            position = nextStart(states, end > position ? end : position + 1);
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Private function running the backwards DFA from the end of the text
+     * to an offset, recording the state it is in at every offset on the way.
+     *
+     * @param text - the text to search
+     * @param from - the offset to stop at
+     * @return the state at each offset i from the offset on, at index i - from
+     */
+    private int[] scanBackward(CharSequence text, int from) {
+        int[] states = new int[text.length() - from + 1];
+        int state = backward.getStartState();
+        states[text.length() - from] = state;
+        for(int i = text.length() - 1; i >= from; i--) {
+            state = stepBackward(state, text.charAt(i));
+            states[i - from] = state;
+        }
+        return states;
+    }
+
+    /**
+     * Private function finding the next offset where a match starts
+     *
+     * @param states - the backwards states, from scanBackward with an offset of 0
+     * @param from - the offset to start looking at
+     * @return the first offset at least from where a match starts, or -1
+     */
+    private int nextStart(int[] states, int from) {
+        for(int i = from; i < states.length; i++) {
+            if(backward.isFinal(states[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Private function stepping the backwards DFA on one character. A
+     * character the DFA can't read means no match can go through it, so
+     * the scan starts over from the start state.
+     *
+     * @param state - the current state
+     * @param c - the character read
+     * @return the next state
+     */
+    private int stepBackward(int state, char c) {
+        int next = backward.step(state, c);
+        return next < 0 ? backward.getStartState() : next;
+    }
+
+    /**
+     * Private function finding the end of the longest match starting at an
+     * offset, which must be an offset where some match starts. The scan
+     * stops once no match end can be reached from where it is.
+     *
+     * @param text - the text to search
+     * @param start - where the match starts
+     * @param states - the backwards states, from scanBackward
+     * @param from - the offset scanBackward was given
+     * @return where the longest match ends
+     */
+    private int longest(CharSequence text, int start, int[] states, int from) {
+        int end = start;
+        int state = forward.getStartState();
+        for(int i = start; i < text.length(); i++) {
+            state = forward.step(state, text.charAt(i));
+            if(state < 0 || !live(state, states[i + 1 - from])) {
+                break;
+            }
+            if(forward.isFinal(state)) {
+                end = i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Private function checking whether a match end can still be reached
+     * from a forward state, given the backwards state at the same offset:
+     * whether they have an NFA state in common.
+     *
+     * @param state - the forward state
+     * @param live - the backwards state
+     * @return true if some match end is still ahead
+     */
+    private boolean live(int state, int live) {
+        long[] in = forwardSets[state];
+        long[] ahead = liveSets[live];
+        for(int i = 0; i < in.length; i++) {
+            if((in[i] & ahead[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
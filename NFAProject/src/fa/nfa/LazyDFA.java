@@ -0,0 +1,285 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+import fa.State;
+import fa.dfa.DFAInterface;
+import fa.dfa.DFAState;
+
+/**
+ * LazyDFA matches strings against an NFA by building the equivalent DFA
+ * one state at a time, only as inputs actually reach those states. DFA
+ * states and their transitions are kept in a cache with a memory budget.
+ * When the cache is full it is flushed and matching carries on from the
+ * current state. If the cache is being flushed so often that it isn't
+ * saving any work, the rest of that input is matched by stepping the NFA
+ * directly, the way NFA.accepts does.
+ *
+ * The NFA must not be changed once a LazyDFA has been made from it. A
+ * LazyDFA is not safe to use from several threads at once. Transitions
+ * are cached per symbol class, so characters that every transition treats
+ * the same way share one cache entry.
+ *
+ * @author James Souder and Jason Egbert
+ */
+public class LazyDFA implements DFAInterface {
+    // Default memory budget for the cache, in bytes
+    public static final long DEFAULT_BUDGET = 8L << 20;
+
+    // Rough size of the objects behind each cached state, on top of its
+    // bitset words and transition row
+    private static final int STATE_OVERHEAD = 64;
+
+    private NFA nfa;                // the NFA being matched
+    private int classCount;         // number of symbol classes in the NFA
+    private int capacity;           // most states the cache may hold
+    private long[] startWords;      // the closure of the NFA start state
+    private SubsetTable cache;      // the cached DFA states, by subset
+    private int[] next;             // next[state * classCount + class], -1 if not worked out yet
+    private boolean[] finals;       // whether each cached state is final
+    private long flushes;           // number of times the cache has been flushed
+    private long sinceFlush;        // characters read since the cache was last flushed
+    private long fallbacks;         // number of inputs finished by stepping the NFA
+
+    /**
+     * Constructs a LazyDFA over the given NFA, with the default memory budget.
+     *
+     * @param nfa - the NFA to match against
+     */
+    public LazyDFA(NFA nfa) {
+        this(nfa, DEFAULT_BUDGET);
+    }
+
+    /**
+     * Constructs a LazyDFA over the given NFA. The cache holds as many DFA
+     * states as fit in the budget, but always at least a few.
+     *
+     * @param nfa - the NFA to match against
+     * @param memoryBudget - roughly how many bytes the cache may use
+     */
+    public LazyDFA(NFA nfa, long memoryBudget) {
+        this.nfa = nfa;
+        nfa.prepare();
+        this.classCount = nfa.classCount();
+        this.startWords = nfa.startClosure().words();
+
+        long stateSize = STATE_OVERHEAD + 8L * nfa.wordCount() + 4L * classCount;
+        this.capacity = (int) Math.max(4, Math.min(Integer.MAX_VALUE / classCount, memoryBudget / stateSize));
+
+        this.cache = new SubsetTable();
+        this.next = new int[16 * classCount];
+        this.finals = new boolean[16];
+        Arrays.fill(next, -1);
+    }
+
+    @Override
+    public boolean accepts(String s) {
+        // the input "e" stands for the empty string
+        if(s.length() == 1 && s.charAt(0) == 'e') {
+            s = "";
+        }
+
+        long[] scratch = new long[startWords.length];
+
+        // find the start state, making room for it if it was flushed out
+        int state = cache.indexOf(startWords);
+        if(state < 0) {
+            if(cache.size() == capacity) {
+                flush();
+            }
+            state = intern(startWords);
+        }
+
+        for(int i = 0; i < s.length(); i++) {
+            int cls = nfa.classOf(s.charAt(i));
+
+            // a character outside sigma can't be read from any state
+            if(cls == 0) {
+                return false;
+            }
+
+            int to = next[state * classCount + cls];
+            if(to < 0) {
+                // work out the transition from the NFA, and cache it
+                nfa.move(cache.get(state).words(), nfa.classSymbol(cls), scratch);
+                to = cache.indexOf(scratch);
+
+                if(to >= 0) {
+                    next[state * classCount + cls] = to;
+                } else if(cache.size() == capacity) {
+                    // the cache is full. If it only lasted a few characters
+                    // per state since the last flush, caching isn't paying
+                    // for itself, so finish this input on the NFA instead.
+                    if(flushes > 0 && sinceFlush < 10L * capacity) {
+                        fallbacks++;
+                        return simulate(scratch, s, i + 1);
+                    }
+                    flush();
+                    to = intern(scratch);
+                } else {
+                    to = intern(scratch);
+                    next[state * classCount + cls] = to;
+                }
+            }
+
+            state = to;
+            sinceFlush++;
+        }
+
+        return finals[state];
+    }
+
+    @Override
+    public State getToState(DFAState from, char onSymb) {
+        int symbol = nfa.symbolOf(onSymb);
+        if(!(from instanceof SubsetState) || symbol <= 0) {
+            return null;
+        }
+
+        long[] words = new long[startWords.length];
+        nfa.move(((SubsetState) from).subset.words(), symbol, words);
+        return newState(words);
+    }
+
+    /**
+     * Returns the start state of the DFA. Its transitions can be followed
+     * with getToState, which works them out without touching the cache.
+     *
+     * @return the start state
+     */
+    public DFAState getStartState() {
+        return newState(startWords);
+    }
+
+    /**
+     * Number of DFA states currently in the cache
+     *
+     * @return the number of cached states
+     */
+    public int getCachedStates() {
+        return cache.size();
+    }
+
+    /**
+     * Most DFA states the cache will hold before it is flushed
+     *
+     * @return the capacity of the cache
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of times the cache has been flushed because it was full
+     *
+     * @return the number of flushes
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Number of inputs that were finished by stepping the NFA directly,
+     * because the cache was being flushed too often
+     *
+     * @return the number of fallbacks
+     */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    @Override
+    public String toString() {
+        return "LazyDFA { cached states = " + cache.size() + " of " + capacity
+                + ", flushes = " + flushes + ", fallbacks = " + fallbacks + " }";
+    }
+
+    /**
+     * Private function returning the cache id of the DFA state for a subset,
+     * adding it to the cache if it isn't there yet. The cache must have
+     * room for it.
+     *
+     * @param words - the subset's bitset words
+     * @return the cache id of the state
+     */
+    private int intern(long[] words) {
+        int id = cache.intern(words);
+
+        // make room for a new state's transitions and finality
+        if(id >= finals.length) {
+            int size = Math.min(capacity, finals.length * 2);
+            int oldLength = next.length;
+            next = Arrays.copyOf(next, size * classCount);
+            Arrays.fill(next, oldLength, next.length, -1);
+            finals = Arrays.copyOf(finals, size);
+        }
+        finals[id] = nfa.anyFinal(words);
+        return id;
+    }
+
+    /**
+     * Private function that throws away every cached state and transition
+     */
+    private void flush() {
+        cache.clear();
+        Arrays.fill(next, -1);
+        flushes++;
+        sinceFlush = 0;
+    }
+
+    /**
+     * Private function that finishes matching an input by stepping the NFA
+     * directly from the given set of states.
+     *
+     * @param current - the states the NFA is in; this array is overwritten
+     * @param s - the input
+     * @param from - the position of the next character to read
+     * @return true if the input is accepted
+     */
+    private boolean simulate(long[] current, String s, int from) {
+        long[] other = new long[current.length];
+
+        for(int i = from; i < s.length(); i++) {
+            int symbol = nfa.symbolOf(s.charAt(i));
+            if(symbol <= 0) {
+                return false;
+            }
+            nfa.move(current, symbol, other);
+            long[] tmp = current;
+            current = other;
+            other = tmp;
+
+            // once there are no states left, nothing can be accepted
+            if(NFA.isEmpty(current)) {
+                return false;
+            }
+        }
+
+        return nfa.anyFinal(current);
+    }
+
+    /**
+     * Private function making a DFAState for a subset, named the same way
+     * NFA.getDFA names its states.
+     *
+     * @param words - the subset's bitset words; they are kept, not copied
+     * @return the new state
+     */
+    private DFAState newState(long[] words) {
+        StateSet subset = new StateSet(words, StateSet.hash(words));
+        return new SubsetState(nfa.createStateName(subset), nfa.anyFinal(words), subset);
+    }
+
+    /**
+     * A DFAState that remembers which NFA states it stands for, so its
+     * transitions can be worked out on demand.
+     */
+    private static class SubsetState extends DFAState {
+        private StateSet subset;    // the NFA states this state stands for
+
+        SubsetState(String name, boolean isFinal, StateSet subset) {
+            super(name, isFinal);
+            this.subset = subset;
+        }
+    }
+}
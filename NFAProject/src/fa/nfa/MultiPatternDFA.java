@@ -0,0 +1,120 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fa.State;
+
+/**
+ * A single DFA that answers which of several NFAs accept an input. The
+ * NFAs are joined under a new start state with empty transitions to each
+ * of their start states, and the result is determinized once. Every DFA
+ * state remembers which of the original NFAs have a final state in its
+ * subset, so one pass over the input reports every NFA that accepts it.
+ *
+ * Instances never change once built, so they can be shared between threads.
+ *
+ * @author James Souder and Jason Egbert
+ */
+public final class MultiPatternDFA {
+    private final int[] classOf;    // char -> symbol class, chars past the end are class 0
+    private final int classCount;   // number of symbol classes, including class 0
+    private final int[] table;      // table[state * classCount + class] -> state, or -1
+    private final int[][] accepts;  // the sorted ids of the patterns each state accepts
+    private final int start;        // the start state
+    private final int patternCount; // number of patterns
+
+    /**
+     * Builds the DFA for the given NFAs. Pattern ids are the positions of
+     * the NFAs in the list. The NFAs themselves are not changed.
+     *
+     * @param nfas - the NFAs to combine
+     */
+    public MultiPatternDFA(List<NFA> nfas) {
+        patternCount = nfas.size();
+
+        // join the NFAs under a new start state, giving each one's states a
+        // prefix so their names can't clash
+        NFA union = new NFA();
+        union.addStartState("start");
+        for(int i = 0; i < nfas.size(); i++) {
+            NFA nfa = nfas.get(i);
+            nfa.copyInto(union, i + ":");
+            union.addTransition("start", 'e', i + ":" + nfa.getStartState().getName());
+        }
+        union.prepare();
+
+        // the final states of every pattern, as bitsets over the union's ids
+        int wordCount = union.wordCount();
+        long[][] finals = new long[patternCount][wordCount];
+        for(int i = 0; i < nfas.size(); i++) {
+            for(State state : nfas.get(i).getFinalStates()) {
+                int id = union.idOf(i + ":" + state.getName());
+                finals[i][id >>> 6] |= 1L << id;
+            }
+        }
+
+        // subset construction over symbol classes, leaving out the dead
+        // state so a scan can stop as soon as nothing can match
+        classCount = union.classCount();
+        SubsetTable subsets = new SubsetTable();
+        table = union.determinize(subsets);
+
+        // work out which patterns every state accepts
+        accepts = new int[subsets.size()][];
+        List<Integer> ids = new ArrayList<>();
+        for(int d = 0; d < accepts.length; d++) {
+            ids.clear();
+            for(int i = 0; i < patternCount; i++) {
+                if(subsets.get(d).intersects(finals[i])) {
+                    ids.add(i);
+                }
+            }
+            accepts[d] = new int[ids.size()];
+            for(int j = 0; j < ids.size(); j++) {
+                accepts[d][j] = ids.get(j);
+            }
+        }
+
+        classOf = union.getSymbolClasses().toLookupTable();
+        start = 0;
+    }
+
+    /**
+     * Finds every pattern that accepts the whole input, in one pass over it.
+     * As with DFA.accepts, the input "e" stands for the empty string.
+     *
+     * @param input - the input characters
+     * @return the ids of the patterns that accept the input, in increasing order
+     */
+    public int[] matches(CharSequence input) {
+        int state = start;
+        int length = input.length();
+        if(length == 1 && input.charAt(0) == 'e') {
+            length = 0;
+        }
+        for(int i = 0; i < length && state >= 0; i++) {
+            char c = input.charAt(i);
+            state = table[state * classCount + (c < classOf.length ? classOf[c] : 0)];
+        }
+        return state < 0 ? new int[0] : accepts[state].clone();
+    }
+
+    /**
+     * Number of patterns the DFA was built from
+     *
+     * @return the number of patterns
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Number of states in the DFA, not counting the dead state
+     *
+     * @return the number of states
+     */
+    public int getStateCount() {
+        return accepts.length;
+    }
+}
@@ -3,6 +3,8 @@ package fa.nfa;
 import java.util.*;
 
 import fa.State;
+import fa.SymbolClasses;
+import fa.dfa.CompiledDFA;
 import fa.dfa.DFA;
 import fa.dfa.DFAState;
 
@@ -13,6 +15,12 @@ import fa.dfa.DFAState;
  * Deterministic Finite Automata of equivalent power, and for the same
  * language.
  *
+ * Internally every state is given a dense integer id when it is added,
+ * and every symbol (including the empty string) a dense symbol index.
+ * Transitions are kept per symbol as compressed adjacency arrays, so
+ * looking up where a state goes is a couple of array reads. The methods
+ * from NFAInterface are a view over those arrays.
+ *
  * @author James Souder and Jason Egbert
  */
 public class NFA implements NFAInterface, fa.FAInterface{
@@ -22,8 +30,30 @@ public class NFA implements NFAInterface, fa.FAInterface{
     private NFAState q0;                            // start state for NFA
     private LinkedHashSet<NFAState> Q;              // set of NFA states
     private LinkedHashSet<Character> sigma;         // alphabet of the NFA
-    private HashMap<String, Set<NFAState>> delta;   // transitions for the NFA states
     private static char EMPTYSTRING = 'e';          // Static variable representing the empty string
+    private boolean minimizeDFA;                    // whether getDFA minimizes the DFA it builds
+    private boolean collectStats;                   // whether getDFA and getCompiledDFA keep their stats
+    private DeterminizeStats lastStats;             // stats of the last getDFA or getCompiledDFA collected
+
+    // Dense integer core of the NFA
+    private ArrayList<NFAState> stateList;          // states, indexed by id
+    private HashMap<String, Integer> stateIds;      // state name -> id
+    private HashMap<Character, Integer> symbolIds;  // symbol -> index, the empty string is always 0
+    private ArrayList<Character> symbols;           // symbols, indexed by symbol index
+    private long[] edges;                           // packed (symbol, from, to) transitions, as added
+    private int edgeCount;                          // number of entries used in edges
+    private int[][] rowStart;                       // per symbol, where each state's targets start
+    private int[][] targets;                        // per symbol, the targets of every state back to back
+    private ClosureTable closures;                  // precomputed eClosure of every state
+    private long[] finalWords;                      // bitset of the final states
+    private int[] symbolLookup;                     // char -> symbol index, -1 if not a symbol
+    private SymbolClasses classes;                  // groups of symbols no transition tells apart
+    private int[] classSymbol;                      // symbol index of a character of each class
+    private long closureNanos;                      // time the closures took when they were last worked out
+
+    // bit layout of a packed edge: symbol index, then from id, then to id
+    private static final int ID_BITS = 23;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
 
     /**
      * Constructor for NFA class. Initializes all instance variables
@@ -38,69 +68,65 @@ public class NFA implements NFAInterface, fa.FAInterface{
         this.q0 = null;
         this.Q = new LinkedHashSet<>();
         this.sigma = new LinkedHashSet<>();
-        this.delta = new HashMap<>();
 
+        this.stateList = new ArrayList<>();
+        this.stateIds = new HashMap<>();
+        this.symbolIds = new HashMap<>();
+        this.symbols = new ArrayList<>();
+        this.edges = new long[16];
+        this.edgeCount = 0;
+
+        // the empty string always gets symbol index 0
+        symbolIds.put(EMPTYSTRING, 0);
+        symbols.add(EMPTYSTRING);
     }
 
     @Override
     public void addStartState(String name) {
-        // checks for state in set Q
-        NFAState state = getStateInQ(name);
-
-        // Adds state to Q only if it isn't already there
-        if(state == null) {
-            state = new NFAState(name);
-            this.Q.add(state);
-        }
-
-        // Sets Start state, q0, to the current state
-        this.q0 = state;
+        // Sets Start state, q0, to the state, adding it to Q if it isn't already there
+        this.q0 = getOrAddState(name);
     }
 
     @Override
     public void addState(String name) {
         // adds the specified state to the set Q for the NFA
-        this.Q.add(new NFAState(name));
+        getOrAddState(name);
     }
 
     @Override
     public void addFinalState(String name) {
-        // Creates a new state from the provided state name
-        NFAState state = new NFAState(name);
-        // adds the state to the final state set, F
+        // Finds or creates the state with the provided name
+        NFAState state = getOrAddState(name);
+        // marks it final and adds it to the final state set, F
+        state.setFinal();
         F.add(state);
-        // Also adds the new state to the list of NFA states Q
-        Q.add(state);
+        rowStart = null;
     }
 
     @Override
     public void addTransition(String fromState, char onSymb, String toState) {
-        // creates a key using the state name and the transition symbol
-        String key = fromState + onSymb;
-
-        // Checks to see if the key already exists. If it does, the new
-        // transition is added to the set already at that key. Otherwise
-        // a new set is generated and added using the specified key for
-        // later retrieval
-        NFAState actualState;
-        if (!delta.containsKey(key)) {
-            LinkedHashSet <NFAState> set = new LinkedHashSet<>();
-
-            // finds the state in Q with the name toState, and adds it to
-            // our set so we can put it in delta
-            actualState = getStateInQ(toState);
-            set.add(actualState);
-            delta.put(key, set);
-        } else {
-            // adds the state to an existing set in delta
-            actualState = getStateInQ(toState);
-            delta.get(key).add(actualState);
+        int from = idOf(fromState);
+        int to = idOf(toState);
+
+        // look up the index of the symbol, giving new symbols the next free index
+        Integer symbol = symbolIds.get(onSymb);
+        if(symbol == null) {
+            symbol = symbols.size();
+            symbolIds.put(onSymb, symbol);
+            symbols.add(onSymb);
         }
 
+        // store the transition as a packed edge. Duplicates are dropped when the
+        // edges are folded into the adjacency arrays.
+        if(edgeCount == edges.length) {
+            edges = Arrays.copyOf(edges, edgeCount * 2);
+        }
+        edges[edgeCount++] = ((long) symbol << (2 * ID_BITS)) | ((long) from << ID_BITS) | to;
+        rowStart = null;
+
         // adds all transition characters to sigma, except the 'e', which is not a symbol
-        if(!sigma.contains(onSymb)) {
-            if(onSymb != EMPTYSTRING)
-                sigma.add(onSymb);
+        if(onSymb != EMPTYSTRING) {
+            sigma.add(onSymb);
         }
     }
 
@@ -129,125 +155,319 @@ public class NFA implements NFAInterface, fa.FAInterface{
         // dfa, the DFA to be returned by this function, created using
         // the NFA and it's details.
         DFA dfa = new DFA();
+        DeterminizeEvent event = new DeterminizeEvent();
+        DeterminizeStats stats = startStats(event);
+
+        // every character in sigma, in sigma's order, along with its symbol
+        // class. Characters in the same class go to the same place from
+        // every state, so we only need to work out one move per class.
+        char[] abc = new char[sigma.size()];
+        int[] abcClass = new int[sigma.size()];
+        int width = classes.getClassCount();
+        int i = 0;
+        for(char element : sigma) {
+            abc[i] = element;
+            abcClass[i++] = classes.classOf(element);
+        }
+
+        // DFA states are only created as the search below discovers them,
+        // so the work done scales with the number of reachable subsets
+        // rather than with the full powerset of Q. Each subset is a bitset
+        // over NFA state ids, and the table hands out the next DFA state id
+        // the first time a subset is seen, so ids come out in the order a
+        // breadth first search visits the states. The empty subset becomes
+        // the dead state, and loops back to itself like any other subset.
+        SubsetTable table = new SubsetTable();
+        long[] words = new long[wordCount()];
+
+        // transitions of the DFA, delta[d * width + c] is where DFA state
+        // d goes on the characters of class c
+        int[] delta = new int[16 * width];
+
+        // the order the states are added to the DFA's Q, with a flag for
+        // every state already listed
+        int[] order = new int[16];
+        boolean[] listed = new boolean[16];
+        int listedCount = 0;
+
+        // uses the closure of q0 to create our new start state, which gets id 0
+        closures.get(idOf(q0.getName())).copyInto(words);
+        table.intern(words);
+        if(stats != null) {
+            stats.started(table.get(0).size());
+        }
+
+        // run through the states in the order they were discovered, working out
+        // where each goes on every element of the alphabet. Every subset we
+        // reach is interned, which adds it to the end of the table if we
+        // haven't seen it before, so the loop searches it later.
+        for(int d = 0; d < table.size(); d++) {
+            StateSet subset = table.get(d);
+
+            if((d + 1) * width > delta.length) {
+                delta = Arrays.copyOf(delta, delta.length * 2);
+            }
+            for(int c = 1; c < width; c++) {
+                int next = step(subset.words(), classSymbol[c], words, table, true, stats);
+                delta[d * width + c] = next;
 
-        // retrieve the complete list of substates and a complete
-        // list of all possible transitions to/from those states.
-        // This data will be winnowed down later to send only the
-        // relevant states and transitions to the DFA. qPrime is
-        // the powerset of all states in the NFA
-        LinkedHashSet<DFAState> qPrime = getPowerSet();
-
-        // Initialize the set of final states and the start state, to be
-        // determined in the next few lines.
-        // also initializes the set of states Q to be passed in to the DFA
-        LinkedHashSet<DFAState> finalStates = new LinkedHashSet<>();
-        LinkedHashSet<DFAState> dfaQ = new LinkedHashSet<>();
-
-        // sets up the dead state, so it's easier to find later
-        DFAState deadState = getFromSet(qPrime, "[]");
-
-        // add all transitions for every state in qPrime
-        addDFATransitions(qPrime);
-
-        // uses getToState function to establish the closure of q0,
-        // thus allowing us to create our new start state.
-        Set<NFAState> closure = eClosure(q0);
-
-        // takes the set of states in closure, and turns the name into a
-        // string to be used to create the DFA start state later.
-        String startStateName = createStateName(closure);
-
-        // finds the start state in qPrime
-        DFAState dfaStart = getFromSet(qPrime, startStateName);
-
-        // queue to search through and find all valid states from start to finish
-        Queue<DFAState> searchQueue = new LinkedList<>();
-        Set<DFAState> searched = new LinkedHashSet<>();
-
-        // plug the start state into a queue for searching, and a queue for keeping track of it
-        searchQueue.add(dfaStart);
-        searched.add(dfaStart);
-
-        // run through the queue, adding new states as we find them, and
-        // saving the transitions while checking for final states. This
-        // information will be passed in to the DFA later
-        while(!searchQueue.isEmpty()) {
-            DFAState tmpState = searchQueue.remove();
-
-            // for every element of the alphabet, see where it goes from the
-            // state we just removed from the queue, and add the new state to our dfaQ
-            // If we haven't seen the state, we add it to our searchQueue, so we can
-            // search it later. Otherwise, we add a transition to the dead state so
-            // we can make sure we reject the string when necessary.
-            for (char element : sigma) {
-                DFAState nextState = tmpState.getTo(element);
-                if(nextState != null) {
-                    if(!searched.contains(nextState)) {
-                        searchQueue.add(nextState);
+                // the state we're going to goes into Q before the state we're leaving
+                if(table.size() > listed.length) {
+                    listed = Arrays.copyOf(listed, listed.length * 2);
+                }
+                if(!listed[next]) {
+                    listed[next] = true;
+                    if(listedCount == order.length) {
+                        order = Arrays.copyOf(order, order.length * 2);
                     }
-                    dfaQ.add(nextState);
-                    searched.add(nextState);
-                } else {
-                    dfaQ.add(deadState);
-                    tmpState.addTransition(element, deadState);
+                    order[listedCount++] = next;
                 }
             }
 
-            // if dfaQ doesn't already have our current state, add it to the list
-            dfaQ.add(tmpState);
-
-            // for every state in the list of final states, check to see if the name
-            // of our temporary state has that character. If so, add it to the list
-            // of final states and set it as final.
-            for(NFAState finalState: F) {
-                if (tmpState.getName().contains(finalState.getName())) {
-                    finalStates.add(tmpState);
-                    break;  // we found a final state, we don't need to keep looking
+            // if we haven't listed our current state yet, add it to the list
+            if(!listed[d]) {
+                listed[d] = true;
+                if(listedCount == order.length) {
+                    order = Arrays.copyOf(order, order.length * 2);
                 }
+                order[listedCount++] = d;
             }
         }
 
-        // add final states to dfa
-        for(DFAState tmpState: finalStates){
-            dfa.addFinalState(tmpState.getName());
+        // name every DFA state after the NFA states that make it up
+        long built = stats != null ? System.nanoTime() : 0;
+        String[] names = new String[table.size()];
+        for(int d = 0; d < names.length; d++) {
+            names[d] = createStateName(table.get(d));
+        }
+
+        // add final states to dfa, in the order they were discovered
+        boolean[] added = new boolean[table.size()];
+        for(int d = 0; d < names.length; d++) {
+            if(table.get(d).intersects(finalWords)) {
+                dfa.addFinalState(names[d]);
+                added[d] = true;
+            }
         }
 
         // add start state to dfa
-        dfa.addStartState(dfaStart.getName());
+        dfa.addStartState(names[0]);
+        added[0] = true;
+
+        // add remainder of states to dfa, skipping the ones already added
+        for(int j = 0; j < listedCount; j++) {
+            if(!added[order[j]]) {
+                dfa.addState(names[order[j]]);
+                added[order[j]] = true;
+            }
+        }
+
+        // add transitions for every state
+        for(int j = 0; j < listedCount; j++) {
+            int d = order[j];
+            for(i = 0; i < abc.length; i++) {
+                dfa.addTransition(names[d], abc[i], names[delta[d * width + abcClass[i]]]);
+            }
+        }
+
+        // merge equivalent states, if the user asked for it
+        if(minimizeDFA) {
+            dfa = dfa.minimize();
+        }
+
+        finishStats(event, stats, table.size(), built);
+        return dfa;
+    }
 
-        // add remainder of states to dfa
-        for(DFAState tmpState: dfaQ){
-            Set<DFAState> checkStates = dfa.getStates();
-            Set<String> stateNames = new LinkedHashSet<>();
+    /**
+     * Determinizes the NFA straight into a CompiledDFA, without naming
+     * any states or building a DFA object on the way. The dead state is
+     * left out, so the compiled DFA rejects as soon as nothing can match.
+     *
+     * @return the compiled DFA
+     */
+    public CompiledDFA getCompiledDFA() {
+        return getCompiledDFA(new SubsetTable());
+    }
 
-            // for every state int he set checkStates, add its name to our stateNames set
-            for(DFAState state: checkStates) {
-                stateNames.add(state.getName());
+    /**
+     * Determinizes the NFA straight into a CompiledDFA, as getCompiledDFA
+     * does, leaving the subset of NFA states behind every DFA state in a
+     * table: state d of the compiled DFA is subsets.get(d).
+     *
+     * @param subsets - an empty table, filled in with every reachable subset
+     * @return the compiled DFA
+     */
+    CompiledDFA getCompiledDFA(SubsetTable subsets) {
+        DeterminizeEvent event = new DeterminizeEvent();
+        DeterminizeStats stats = startStats(event);
+        int[] table = determinize(subsets, stats);
+
+        long built = stats != null ? System.nanoTime() : 0;
+        long[] finals = new long[(subsets.size() + 63) >>> 6];
+        for(int d = 0; d < subsets.size(); d++) {
+            if(subsets.get(d).intersects(finalWords)) {
+                finals[d >>> 6] |= 1L << d;
             }
+        }
+        CompiledDFA dfa = CompiledDFA.of(classes.toLookupTable(), classSymbol.length, table, finals, 0);
+        finishStats(event, stats, subsets.size(), built);
+        return dfa;
+    }
 
-            // if the name of tmpstate isn't in our stateNames queue, add it now
-            if(!stateNames.contains(tmpState.getName())) {
-                dfa.addState(tmpState.getName());
+    /**
+     * Runs subset construction over symbol classes. The closure of the
+     * start state gets id 0, and every other subset the next free id as
+     * it is reached. The empty subset is not given an id; transitions to it
+     * are -1, as are the transitions on class 0.
+     *
+     * @param subsets - an empty table, filled in with every reachable subset
+     * @return the transition table, indexed by id * classCount() + class
+     */
+    int[] determinize(SubsetTable subsets) {
+        return determinize(subsets, null);
+    }
+
+    /**
+     * Private function running subset construction as determinize does,
+     * counting and timing the work if stats is not null.
+     *
+     * @param subsets - an empty table, filled in with every reachable subset
+     * @param stats - where to record the work, or null
+     * @return the transition table, indexed by id * classCount() + class
+     */
+    private int[] determinize(SubsetTable subsets, DeterminizeStats stats) {
+        buildTables();
+        int width = classSymbol.length;
+        long[] words = new long[wordCount()];
+        int[] delta = new int[16 * width];
+
+        startClosure().copyInto(words);
+        subsets.intern(words);
+        if(stats != null) {
+            stats.started(subsets.get(0).size());
+        }
+
+        for(int d = 0; d < subsets.size(); d++) {
+            StateSet subset = subsets.get(d);
+            if((d + 1) * width > delta.length) {
+                delta = Arrays.copyOf(delta, delta.length * 2);
+            }
+            delta[d * width] = -1;
+            for(int c = 1; c < width; c++) {
+                delta[d * width + c] = step(subset.words(), classSymbol[c], words, subsets, false, stats);
             }
         }
 
-        // add transitions based on states in dfaQ
-        for(DFAState tmpState: dfaQ){
-            for(char symbol: sigma){
-                DFAState testState = tmpState.getTo(symbol);
+        return Arrays.copyOf(delta, subsets.size() * width);
+    }
 
-                if(testState != null) {
-                    dfa.addTransition(tmpState.getName(), symbol, testState.getName());
-                }
+    /**
+     * Builds the reverse of this NFA, which accepts exactly the reversed
+     * strings. Every transition is turned around, a new start state has
+     * empty transitions to the old final states, and the old start state
+     * becomes the only final state. When unanchored, the new start state
+     * also loops on every symbol, so the reverse can start matching at
+     * any point of its input.
+     *
+     * @param unanchored - whether to let the reverse skip a prefix of its input
+     * @return the reversed NFA
+     */
+    NFA reverse(boolean unanchored) {
+        NFA reversed = new NFA();
+
+        // pick a name for the new start state that isn't taken yet
+        String start = "^";
+        while(stateIds.containsKey(start)) {
+            start += "^";
+        }
+        reversed.addStartState(start);
+        for(NFAState state : stateList) {
+            reversed.addState(state.getName());
+        }
+        reversed.addFinalState(q0.getName());
+
+        for(int j = 0; j < edgeCount; j++) {
+            int symbol = (int) (edges[j] >>> (2 * ID_BITS));
+            int from = (int) ((edges[j] >>> ID_BITS) & ID_MASK);
+            int to = (int) (edges[j] & ID_MASK);
+            reversed.addTransition(stateList.get(to).getName(), symbols.get(symbol),
+                    stateList.get(from).getName());
+        }
+        for(NFAState state : F) {
+            reversed.addTransition(start, EMPTYSTRING, state.getName());
+        }
+        if(unanchored) {
+            for(char symbol : sigma) {
+                reversed.addTransition(start, symbol, start);
             }
         }
+        return reversed;
+    }
 
-        return dfa;
+    /**
+     * Groups sigma into symbol classes: sets of symbols that take every
+     * state to the same places. getDFA works out one move per class
+     * rather than one per symbol.
+     *
+     * @return the symbol classes of the NFA
+     */
+    public SymbolClasses getSymbolClasses() {
+        buildTables();
+        return classes;
+    }
+
+    /**
+     * Sets whether getDFA should minimize the DFA it builds before returning
+     * it. Subset construction often produces several equivalent states, such
+     * as more than one state that can never reach a final state; minimizing
+     * merges them. Off by default, so getDFA names every state after the
+     * subset of NFA states it stands for.
+     *
+     * @param minimize - true to minimize the DFA returned by getDFA
+     */
+    public void setMinimizeDFA(boolean minimize) {
+        this.minimizeDFA = minimize;
+    }
+
+    /**
+     * Sets whether getDFA and getCompiledDFA should count and time the work
+     * subset construction does, and keep the numbers for getLastStats. Off
+     * by default. The numbers are also collected, whatever this is set to,
+     * when Flight Recorder is recording fa.nfa.Determinize events.
+     *
+     * @param collect - true to keep the stats of every run
+     */
+    public void setCollectStats(boolean collect) {
+        this.collectStats = collect;
+    }
+
+    /**
+     * Returns the stats of the last getDFA or getCompiledDFA run while
+     * collecting was turned on with setCollectStats.
+     *
+     * @return the stats, or null if no run has collected any
+     */
+    public DeterminizeStats getLastStats() {
+        return lastStats;
     }
 
     @Override
     public Set<NFAState> getToState(NFAState from, char onSymb) {
-        return delta.get(from.getName() + onSymb);
+        Set<NFAState> toStates = new LinkedHashSet<>();
+        Integer symbol = symbolIds.get(onSymb);
+
+        // if the symbol has never been used there can't be any transitions on it
+        if(symbol != null) {
+            buildTables();
+            int id = idOf(from.getName());
+            int[] row = targets[symbol];
+            for(int j = rowStart[symbol][id]; j < rowStart[symbol][id + 1]; j++) {
+                toStates.add(stateList.get(row[j]));
+            }
+        }
+
+        return toStates;
     }
 
     @Override
@@ -255,281 +475,485 @@ public class NFA implements NFAInterface, fa.FAInterface{
         // The closure of the state to be returned
         LinkedHashSet<NFAState> closure = new LinkedHashSet<>();
 
-        // adds current state to the closure (first itsself)
-        closure.add(s);
-
-        // queue to keep track of where we can go from each
-        // state for free
-        Queue<NFAState> closureQueue = new LinkedList<>();
-
-        // set of states we can get to from s for free
-        Set<NFAState> stateSet = delta.get(s.getName() + EMPTYSTRING);
-
-        // add all states from stateSet to the queue so we can add them
-        // to the closure, and check to see if we can go anywhere from
-        // them for free
-        if(stateSet != null) {
-            closureQueue.addAll(stateSet);
-//            for (NFAState tmpState : stateSet) {
-//                closureQueue.add(tmpState);
-//            }
+        // look up the precomputed closure, then turn the ids back into states
+        buildTables();
+        StateSet set = closures.get(idOf(s.getName()));
+        for(int id = set.nextId(0); id >= 0; id = set.nextId(id + 1)) {
+            closure.add(stateList.get(id));
         }
 
-        // creates a copy of the closure
-        Queue<NFAState> closureCopy = new LinkedList<>();
+        return closure;
+    }
+
+    /**
+     * Simulates the NFA directly on the input, without building a DFA. The
+     * set of states the NFA could be in is kept as a bitset and stepped one
+     * character at a time, so this takes time proportional to the length of
+     * the input times the size of Q, and memory proportional to the size of
+     * Q, however large the equivalent DFA would be. As with DFA.accepts, the
+     * input "e" stands for the empty string.
+     *
+     * @param input - the string to test
+     * @return true if the input is in the language of the NFA and false otherwise
+     */
+    public boolean accepts(CharSequence input) {
+        buildTables();
+        long[] current = new long[wordCount()];
+        long[] next = new long[wordCount()];
 
-        closureCopy.addAll(closureQueue);
+        // we start out in the closure of q0
+        startClosure().copyInto(current);
 
-        Set<NFAState> copySet;
-        Set<NFAState> tracker = new LinkedHashSet<>();
+        if(!(input.length() == 1 && input.charAt(0) == EMPTYSTRING)) {
+            for(int i = 0; i < input.length(); i++) {
+                int symbol = symbolOf(input.charAt(i));
 
-        // looks for empty transitions from each of the elements in closurecopy,
-        // and adds them to the closure queue
-        while(!closureCopy.isEmpty()){
-            NFAState tmp = closureCopy.remove();
-            tracker.add(tmp);
-            tracker.add(s);
+                // a character outside sigma can't be read from any state
+                if(symbol <= 0) {
+                    return false;
+                }
 
-            copySet = delta.get(tmp.getName()+EMPTYSTRING);
+                move(current, symbol, next);
+                long[] tmp = current;
+                current = next;
+                next = tmp;
 
-            if(copySet != null){
-                for(NFAState tmpState : copySet)
-                    if(!tracker.contains(tmpState)){
-                        closureQueue.add(tmpState);
-                        tracker.add(tmpState);
-                        closureCopy.add(tmpState);
-                    }
+                // once there are no states left, nothing can be accepted
+                if(isEmpty(current)) {
+                    return false;
+                }
             }
-
         }
 
-        // add all elements in closureQueue to the closure
-        closure.addAll(closureQueue);
-
-        return closure;
+        // accept if any of the states we could be in is final
+        return anyFinal(current);
     }
 
     /**
-     * private function allowing easy traversal of the set Q to find
-     * specific states. Avoids code duplication for a commonly used
-     * set commands
+     * Checks whether a bitset has no states in it.
      *
-     * @param name - the name of the state you're trying to find.
-     * @return returns the state from Q with the user specified name
+     * @param words - the bitset words
+     * @return true if no bits are set
      */
-    private NFAState getStateInQ(String name) {
-        NFAState tmp = null;
-
-        // searches Q for the state with the name you want
-        for(NFAState state : this.Q) {
-            // if the name matches, save the state!
-            if(state.toString().equals(name)) {
-                tmp = state;
-                break;  // we don't need to keep searching
+    static boolean isEmpty(long[] words) {
+        for(long word : words) {
+            if(word != 0) {
+                return false;
             }
         }
-
-        return tmp;
+        return true;
     }
 
     /**
-     * Private function that uses string builder to create names for
-     * NFA states from a the states in a set passed in by the user.
+     * Copies every state and transition of this NFA into another one, with
+     * a prefix added to every state name so they can't clash with states
+     * already there. Final and start states are copied as plain states.
      *
-     * @param states - the set of states from which we will glean a new name
-     * @return the string representing the new state name
+     * @param target - the NFA to copy into
+     * @param prefix - the prefix for the copied state names
      */
-    private String createStateName(Set<NFAState> states) {
-        StringBuilder builder = new StringBuilder();    // old state names
-        StringBuilder name = new StringBuilder();   // name of new state
-
-        // collect the names of the states we're combining
-        for (NFAState state: states) {
-            builder.append(state.toString());
+    void copyInto(NFA target, String prefix) {
+        for(NFAState state : stateList) {
+            target.addState(prefix + state.getName());
+        }
+        for(int j = 0; j < edgeCount; j++) {
+            int symbol = (int) (edges[j] >>> (2 * ID_BITS));
+            int from = (int) ((edges[j] >>> ID_BITS) & ID_MASK);
+            int to = (int) (edges[j] & ID_MASK);
+            target.addTransition(prefix + stateList.get(from).getName(), symbols.get(symbol),
+                    prefix + stateList.get(to).getName());
         }
+    }
 
-        // sorts the characters in the name naturally, before building the name
-        char[] chars = builder.toString().toCharArray();
-        Arrays.sort(chars);
+    /**
+     * Brings the adjacency arrays, closures and lookup tables up to date.
+     * Used by the other matchers in this package before they start stepping
+     * the NFA; the NFA must not change while they use it.
+     */
+    void prepare() {
+        buildTables();
+    }
 
-        // build the actual name we're going to give to the DFA state
-        name.append("[");
+    /**
+     * Returns the symbol index of a character. Index 0 is the empty string.
+     *
+     * @param c - the character
+     * @return the symbol index, or -1 if the character is not a symbol of the NFA
+     */
+    int symbolOf(char c) {
+        return c < symbolLookup.length ? symbolLookup[c] : -1;
+    }
 
-        for(char letter: chars){
-            name.append(letter);
-            name.append(", ");
-        }
+    /**
+     * Number of symbol indexes in use, including the empty string
+     *
+     * @return the number of symbols
+     */
+    int symbolCount() {
+        return symbols.size();
+    }
 
-        // delete extra characters, if there are any.
-        if(name.length() > 1){
-            name.delete(name.length()-2, name.length());
-        }
+    /**
+     * Returns the symbol class of a character
+     *
+     * @param c - the character
+     * @return the class, or 0 if the character is not a symbol of the NFA
+     */
+    int classOf(char c) {
+        return classes.classOf(c);
+    }
 
-        name.append("]");
+    /**
+     * Returns the symbol index of one of the characters of a class, which
+     * can be used to move on the whole class.
+     *
+     * @param c - the class, from 1 up
+     * @return a symbol index
+     */
+    int classSymbol(int c) {
+        return classSymbol[c];
+    }
 
-        return name.toString();
+    /**
+     * Number of symbol classes, including class 0 for characters outside sigma
+     *
+     * @return the number of classes
+     */
+    int classCount() {
+        return classSymbol.length;
     }
 
+    /**
+     * Returns the eClosure of the start state
+     *
+     * @return the states the NFA starts out in
+     */
+    StateSet startClosure() {
+        return closures.get(idOf(q0.getName()));
+    }
 
     /**
-     * getPowerSet takes the states from Q and combines them into the complete
-     * set of substates forming qPrime, which will be used to generate an NFA,
-     * including the empty set, or dead state.
+     * Checks whether any of the states in a bitset is final
      *
-     * @return qPrime - the list of all subsets of states from Q
+     * @param words - the bitset words
+     * @return true if the bitset contains a final state
      */
-    private LinkedHashSet<DFAState> getPowerSet() {
-        // the return set of all possible states.
-        LinkedHashSet<DFAState> qPrime= new LinkedHashSet<>();
-
-        // Create an array from the states in Q
-        NFAState[] element = new NFAState[Q.size()];
-
-        int i=0;
-        for(NFAState state: Q){
-            element[i] = state;
-            i++;
-        }
-
-        // Set a length of binary bits with length equal to the length
-        // of Q
-        final int SET_LENGTH = 1 << element.length;
-
-        // Create a set of sets to store the powerset data in
-        Set<Set<NFAState>> powerSet = new LinkedHashSet<>();
-
-        // cycle through the sets, masking bits to get the
-        // elements in the array element that we want, and place
-        // them in our powerset, until we have the complete powerset
-        for(int binarySet = 0; binarySet < SET_LENGTH; binarySet++){
-            Set<NFAState> subset = new LinkedHashSet<>();
-            for(int bit = 0; bit < element.length; bit++){
-                int mask = 1 << bit;
-                if((binarySet&mask) != 0){
-                    subset.add(element[bit]);
-                }
+    boolean anyFinal(long[] words) {
+        for(int i = 0; i < words.length; i++) {
+            if((words[i] & finalWords[i]) != 0) {
+                return true;
             }
-            powerSet.add(subset);
         }
+        return false;
+    }
 
-        // cycle through the sets in the powerset to name our DFAStates states
-        for (Set<NFAState> set: powerSet) {
-            String stateName = createStateName(set);
-            DFAState newState = new DFAState(stateName);
-            qPrime.add(newState);
+    /**
+     * Private function returning the state with the given name, creating it
+     * and giving it the next free id if it isn't in Q yet.
+     *
+     * @param name - the name of the state you're trying to find
+     * @return the state from Q with the user specified name
+     */
+    private NFAState getOrAddState(String name) {
+        Integer id = stateIds.get(name);
+
+        // Adds state to Q only if it isn't already there
+        if(id == null) {
+            if(stateList.size() > ID_MASK) {
+                throw new IllegalStateException("Too many states in NFA: " + stateList.size());
+            }
+            NFAState state = new NFAState(name);
+            stateIds.put(name, stateList.size());
+            stateList.add(state);
+            this.Q.add(state);
+            rowStart = null;
+            return state;
         }
 
-        return qPrime;
+        return stateList.get(id);
     }
 
     /**
-     * Private function taking in a hashset of DFA states, and returning
-     * a hashmap of transitions for each of those states. Since these are
-     * DFA states, there is only one transition per character in the alphabet
-     * per state in the list, so there is not need to store sets in the return
-     * hashmap.
+     * Returns the id of the state with the given name.
      *
-     * @param qPrime - the set of states over which we will iterate
+     * @param name - the name of the state
+     * @return the id of the state
+     * @throws IllegalArgumentException if there is no state with that name
      */
-    private void addDFATransitions(LinkedHashSet<DFAState> qPrime) {
+    int idOf(String name) {
+        Integer id = stateIds.get(name);
+        if(id == null) {
+            throw new IllegalArgumentException("No state named " + name + " in NFA");
+        }
+        return id;
+    }
 
-        for(DFAState state: qPrime) {
-            //make sure not empty state or dead state
-            if(state.getName().equals("")) {
-                for(char symbol: sigma) {
-                    state.addTransition(symbol, state);
-                }
+    /**
+     * Private function folding the packed edges into per-symbol adjacency
+     * arrays, if they aren't up to date already. targets[symbol] holds the
+     * sorted, duplicate free targets of state 0, then state 1, and so on,
+     * and rowStart[symbol][id] is where the targets of state id begin.
+     */
+    private void buildTables() {
+        if(rowStart != null) {
+            return;
+        }
+
+        int n = stateList.size();
+        int k = symbols.size();
+
+        // sorting the packed edges groups them by symbol, then from state,
+        // then to state, so duplicates end up next to each other
+        long[] sorted = Arrays.copyOf(edges, edgeCount);
+        Arrays.sort(sorted);
+
+        // count the targets of every state on every symbol
+        int[][] starts = new int[k][n + 1];
+        int[] sizes = new int[k];
+        for(int j = 0; j < sorted.length; j++) {
+            if(j > 0 && sorted[j] == sorted[j - 1]) {
                 continue;
             }
+            int symbol = (int) (sorted[j] >>> (2 * ID_BITS));
+            int from = (int) ((sorted[j] >>> ID_BITS) & ID_MASK);
+            starts[symbol][from + 1]++;
+            sizes[symbol]++;
+        }
 
-            for(char symbol : sigma) {
-                // get set that this char can transition to
-                Set<NFAState> states = symbolClosure(state, symbol);
-                DFAState dfaState;
-                String name = createStateName(states);
-
-                dfaState = getFromSet(qPrime, name);
-                state.addTransition(symbol, dfaState);
+        // turn the counts into offsets, and copy the targets across in order
+        int[][] rows = new int[k][];
+        int[] fill = new int[k];
+        for(int symbol = 0; symbol < k; symbol++) {
+            for(int id = 0; id < n; id++) {
+                starts[symbol][id + 1] += starts[symbol][id];
+            }
+            rows[symbol] = new int[sizes[symbol]];
+        }
+        for(int j = 0; j < sorted.length; j++) {
+            if(j > 0 && sorted[j] == sorted[j - 1]) {
+                continue;
             }
+            int symbol = (int) (sorted[j] >>> (2 * ID_BITS));
+            rows[symbol][fill[symbol]++] = (int) (sorted[j] & ID_MASK);
+        }
+
+        targets = rows;
+        rowStart = starts;
+
+        // work out every eClosure once, now that the empty transitions are known
+        long closureStart = System.nanoTime();
+        closures = new ClosureTable(n, starts[0], rows[0]);
+        closureNanos = System.nanoTime() - closureStart;
+
+        // bitset of the final states, so we can tell which subsets are final
+        finalWords = new long[wordCount()];
+        for(NFAState finalState : F) {
+            int id = stateIds.get(finalState.getName());
+            finalWords[id >>> 6] |= 1L << id;
+        }
+
+        // lookup table from characters to symbol indexes, for simulating the NFA
+        char max = 0;
+        for(char symbol : symbols) {
+            max = (char) Math.max(max, symbol);
+        }
+        symbolLookup = new int[max + 1];
+        Arrays.fill(symbolLookup, -1);
+        for(int symbol = 0; symbol < k; symbol++) {
+            symbolLookup[symbols.get(symbol)] = symbol;
+        }
+
+        // group the symbols into classes. Two symbols are in the same class
+        // when their adjacency arrays match, which is when every state goes
+        // to the same places on both.
+        char[] abc = new char[k - 1];
+        int[][] signatures = new int[k - 1][];
+        for(int symbol = 1; symbol < k; symbol++) {
+            abc[symbol - 1] = symbols.get(symbol);
+            signatures[symbol - 1] = new int[n + 1 + rows[symbol].length];
+            System.arraycopy(starts[symbol], 0, signatures[symbol - 1], 0, n + 1);
+            System.arraycopy(rows[symbol], 0, signatures[symbol - 1], n + 1, rows[symbol].length);
+        }
+        classes = SymbolClasses.group(abc, signatures);
+        classSymbol = new int[classes.getClassCount()];
+        for(int c = 1; c < classSymbol.length; c++) {
+            classSymbol[c] = symbolLookup[classes.representative(c)];
         }
     }
 
+    /**
+     * Returns the number of long words a bitset over every state in Q needs.
+     *
+     * @return the number of words
+     */
+    int wordCount() {
+        return (stateList.size() + 63) >>> 6;
+    }
 
     /**
-     * Private method which returns the set containing the closure of a specified
-     * state on a given symbol
+     * Works out the NFA states we can reach from any
+     * of the states in a set on a given symbol, including the eClosure
+     * of every state we land on. The set is expected to be closed under
+     * empty transitions already, as every DFA state is.
      *
-     * @param state - the state we're moving from
-     * @param symbol - the symbol we're transitioning on
-     * @return the set of NFAStates that make up the closure of the DFAState
+     * @param from - the bitset of NFA states we're moving from
+     * @param symbol - the index of the symbol we're transitioning on
+     * @param words - the bitset the result is written into
      */
-    private Set<NFAState> symbolClosure(DFAState state, char symbol) {
-        Set<NFAState> nfaStates = new LinkedHashSet<>();
-
-        String dfaName = state.getName();
-        // parse name
-        for(int i=0; i<dfaName.length(); i++) {
-            // look up state in Q (NFA)
-            char tmp = dfaName.charAt(i);
-            if(tmp == '[' || tmp == ']' || tmp == ',' || tmp == ' '){
-                continue;
-            }
-            String nfaStateNameChar = "" + tmp;
-            NFAState from = getStateInQ(nfaStateNameChar);
-            Queue<NFAState> cycleQueue = new LinkedList<>();
-
-            // get the eClosure of state, to search later. Add those states
-            // to a search queue
-            Set<NFAState> stateClosure = eClosure(from);
-            cycleQueue.addAll(stateClosure);
-
-            // Get all transitions from every state in the eClosure of state, and figure out
-            // where we can go on the symbol from each of those characters
-            while(!cycleQueue.isEmpty()){
-                NFAState tmpState = cycleQueue.remove();
-                Set<NFAState> transitions = delta.get(tmpState.getName()+symbol);
-                if(transitions == null){
-                    break;
+    void move(long[] from, int symbol, long[] words) {
+        move(from, symbol, words, null);
+    }
+
+    /**
+     * Private function doing a move as the other move does, counting the
+     * closure lookups in stats if it is not null.
+     *
+     * @param from - the bitset of NFA states we're moving from
+     * @param symbol - the index of the symbol we're transitioning on
+     * @param words - the bitset the result is written into
+     * @param stats - where to count the closure lookups, or null
+     */
+    private void move(long[] from, int symbol, long[] words, DeterminizeStats stats) {
+        int[] starts = rowStart[symbol];
+        int[] row = targets[symbol];
+        Arrays.fill(words, 0);
+
+        // figure out where we can go on the symbol from each state in the set,
+        // and add the closure of every state we land on. A state that's already
+        // in the result came in with its closure, so we can skip it.
+        for(int id = StateSet.nextId(from, 0); id >= 0; id = StateSet.nextId(from, id + 1)) {
+            for(int j = starts[id]; j < starts[id + 1]; j++) {
+                int to = row[j];
+                if((words[to >>> 6] & (1L << to)) == 0) {
+                    closures.get(to).orInto(words);
+                    if(stats != null) {
+                        stats.closureLookup();
+                    }
+                } else if(stats != null) {
+                    stats.closureSkip();
                 }
-                nfaStates.addAll(transitions);
             }
+        }
+    }
 
-            Set<NFAState> tmpSet = new LinkedHashSet<>();
+    /**
+     * Private function doing one step of subset construction: the move from
+     * a subset on a symbol, then interning the subset it reaches. The step is
+     * counted and timed if stats is not null.
+     *
+     * @param from - the bitset of the subset we're moving from
+     * @param symbol - the index of the symbol we're transitioning on
+     * @param words - scratch space for the subset we reach
+     * @param subsets - the table to intern it in
+     * @param keepEmpty - whether to intern the empty subset, or return -1 for it
+     * @param stats - where to record the step, or null
+     * @return the DFA state id of the subset reached, or -1
+     */
+    private int step(long[] from, int symbol, long[] words, SubsetTable subsets, boolean keepEmpty,
+                     DeterminizeStats stats) {
+        if(stats == null) {
+            move(from, symbol, words, null);
+            return !keepEmpty && isEmpty(words) ? -1 : subsets.intern(words);
+        }
 
-            for (NFAState tmpState: nfaStates) {
-                tmpSet.add(tmpState);
-            }
+        long start = System.nanoTime();
+        move(from, symbol, words, stats);
+        long moved = System.nanoTime();
+        if(!keepEmpty && isEmpty(words)) {
+            stats.step(moved - start, 0, false, -1);
+            return -1;
+        }
+        int size = subsets.size();
+        int next = subsets.intern(words);
+        stats.step(moved - start, System.nanoTime() - moved, true,
+                subsets.size() > size ? subsets.get(next).size() : -1);
+        return next;
+    }
 
-            // For every state that we found on our transition, find the eclosure,
-            // and add it to our list of nfaStates.
-            for (NFAState fromState: tmpSet) {
-                Set<NFAState> transitions = eClosure(fromState);
-                if(transitions == null){
-                    break;
-                }
-                nfaStates.addAll(transitions);
-            }
+    /**
+     * Private function starting a run of subset construction: begins the
+     * Flight Recorder event, and makes sure the tables are up to date. The
+     * run is only counted and timed if the user asked for stats, or the
+     * event is being recorded.
+     *
+     * @param event - the event for the run
+     * @return the stats to record the run in, or null if nobody wants them
+     */
+    private DeterminizeStats startStats(DeterminizeEvent event) {
+        event.begin();
+        if(!collectStats && !event.isEnabled()) {
+            buildTables();
+            return null;
         }
 
-        return nfaStates;
+        DeterminizeStats stats = new DeterminizeStats(stateList.size());
+        boolean stale = rowStart == null;
+        buildTables();
+        stats.prepared(classSymbol.length - 1, stale ? closureNanos : 0);
+        return stats;
     }
 
     /**
-     * Private method to help find a state from a set of DFAStates, namely
-     * qPrime, which we do repeatedly.
+     * Private function finishing a run of subset construction: records the
+     * last of its stats, keeps them for getLastStats, and commits the
+     * Flight Recorder event if it is being recorded.
      *
-     * @param set - the set we're searching
-     * @param name - the name of the state we're searching for
-     * @return the state from the set with the name we want
+     * @param event - the event for the run
+     * @param stats - the stats of the run, or null if it wasn't counted
+     * @param dfaStates - the number of distinct subsets reached
+     * @param built - System.nanoTime when building the DFA started
      */
-    private DFAState getFromSet(Set<DFAState> set, String name) {
-        DFAState retState = null;
-        for(DFAState state : set) {
-            if(state.getName().equals(name)) {
-                retState = state;
-                break;
-            }
+    private void finishStats(DeterminizeEvent event, DeterminizeStats stats, int dfaStates, long built) {
+        if(stats == null) {
+            return;
+        }
+        stats.finished(dfaStates, System.nanoTime() - built);
+        if(collectStats) {
+            lastStats = stats;
+        }
+        event.end();
+        if(event.shouldCommit()) {
+            stats.copyInto(event);
+            event.commit();
+        }
+    }
+
+    /**
+     * Uses string builder to create names for
+     * DFA states from a the states in a set passed in by the user.
+     * The names are sorted naturally, so the same set of states always
+     * gets the same name.
+     *
+     * @param states - the states from which we will glean a new name
+     * @return the string representing the new state name
+     */
+    String createStateName(StateSet states) {
+        StringBuilder name = new StringBuilder();   // name of new state
+
+        // collect the names of the states we're combining, and sort them
+        // naturally before building the name
+        String[] names = new String[states.size()];
+        int i = 0;
+        for (int id = states.nextId(0); id >= 0; id = states.nextId(id + 1)) {
+            names[i++] = stateList.get(id).getName();
+        }
+        Arrays.sort(names);
+
+        // build the actual name we're going to give to the DFA state
+        name.append("[");
+
+        for(String stateName: names){
+            name.append(stateName);
+            name.append(", ");
+        }
+
+        // delete extra characters, if there are any.
+        if(name.length() > 1){
+            name.delete(name.length()-2, name.length());
         }
-        return retState;
+
+        name.append("]");
+
+        return name.toString();
     }
 }
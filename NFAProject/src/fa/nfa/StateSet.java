@@ -0,0 +1,166 @@
+package fa.nfa;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of NFA state ids, stored as a bitset. The hash code is
+ * worked out once when the set is made, so sets can be compared and looked
+ * up in a SubsetTable with a few word compares.
+ *
+ * @author James Souder and Jason Egbert
+ */
+final class StateSet {
+    private final long[] words; // bit i of words[i / 64] is set if state i is in the set
+    private final int hash;     // precomputed hash of words
+
+    /**
+     * Constructs a StateSet over the given words. The array is kept, not
+     * copied, so it must not be changed afterwards.
+     *
+     * @param words - the bitset words
+     * @param hash - the hash of the words, as computed by hash(long[])
+     */
+    StateSet(long[] words, int hash) {
+        this.words = words;
+        this.hash = hash;
+    }
+
+    /**
+     * Hashes a bitset the same way every StateSet is hashed.
+     *
+     * @param words - the bitset words
+     * @return the hash of the words
+     */
+    static int hash(long[] words) {
+        long h = 1;
+        for(long word : words) {
+            h = 31 * h + word;
+        }
+        // mix the high bits down so the low bits used by the table vary
+        h ^= (h >>> 32);
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+
+    /**
+     * Whether the set contains the given state id
+     *
+     * @param id - the state id
+     * @return true if the state is in the set
+     */
+    boolean contains(int id) {
+        return (words[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Whether the set shares any state with the given bitset
+     *
+     * @param other - the words of the other bitset, the same length as ours
+     * @return true if the two sets intersect
+     */
+    boolean intersects(long[] other) {
+        for(int i = 0; i < words.length; i++) {
+            if((words[i] & other[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the next state id in the set, starting from the given id.
+     *
+     * @param from - the id to start looking at
+     * @return the first id in the set that is at least from, or -1 if there isn't one
+     */
+    int nextId(int from) {
+        return nextId(words, from);
+    }
+
+    /**
+     * Returns the next state id in a bitset, starting from the given id.
+     *
+     * @param words - the bitset words
+     * @param from - the id to start looking at
+     * @return the first id in the bitset that is at least from, or -1 if there isn't one
+     */
+    static int nextId(long[] words, int from) {
+        int i = from >>> 6;
+        if(i >= words.length) {
+            return -1;
+        }
+        long word = words[i] & (-1L << from);
+        while(true) {
+            if(word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if(++i == words.length) {
+                return -1;
+            }
+            word = words[i];
+        }
+    }
+
+    /**
+     * Returns the words backing this set. They must not be changed.
+     *
+     * @return the bitset words
+     */
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Number of states in the set
+     *
+     * @return the size of the set
+     */
+    int size() {
+        int size = 0;
+        for(long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * Whether the set has exactly the given words
+     *
+     * @param other - the words to compare to
+     * @param otherHash - the hash of those words
+     * @return true if the sets are equal
+     */
+    boolean sameAs(long[] other, int otherHash) {
+        return hash == otherHash && Arrays.equals(words, other);
+    }
+
+    /**
+     * Adds every state in this set to the given bitset
+     *
+     * @param into - the words to add to, the same length as ours
+     */
+    void orInto(long[] into) {
+        for(int i = 0; i < words.length; i++) {
+            into[i] |= words[i];
+        }
+    }
+
+    /**
+     * Copies the words of this set into the given array
+     *
+     * @param into - the array to copy into, the same length as ours
+     */
+    void copyInto(long[] into) {
+        System.arraycopy(words, 0, into, 0, words.length);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof StateSet && ((StateSet) o).sameAs(words, hash);
+    }
+}
@@ -0,0 +1,132 @@
+package fa.nfa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Interns subsets of NFA states during subset construction. Every distinct
+ * subset is given the next DFA state id the first time it is seen, and the
+ * table maps it back to that id using open addressing with linear probing,
+ * so looking up a subset costs a hash and a few word compares.
+ *
+ * @author James Souder and Jason Egbert
+ */
+final class SubsetTable {
+    private StateSet[] slots;               // the hash table, null where empty
+    private int[] ids;                      // the DFA state id of the set in each slot
+    private ArrayList<StateSet> sets;       // the interned sets, indexed by DFA state id
+
+    /**
+     * Constructs an empty table
+     */
+    SubsetTable() {
+        slots = new StateSet[64];
+        ids = new int[64];
+        sets = new ArrayList<>();
+    }
+
+    /**
+     * Returns the DFA state id of the subset with the given words, adding a
+     * copy of it to the table with the next free id if it isn't there yet.
+     *
+     * @param words - the bitset words of the subset; they are copied, not kept
+     * @return the DFA state id of the subset
+     */
+    int intern(long[] words) {
+        int hash = StateSet.hash(words);
+        int slot = find(words, hash);
+        if(slots[slot] != null) {
+            return ids[slot];
+        }
+
+        int id = sets.size();
+        StateSet set = new StateSet(words.clone(), hash);
+        slots[slot] = set;
+        ids[slot] = id;
+        sets.add(set);
+
+        // keep the table at most half full
+        if(sets.size() * 2 > slots.length) {
+            grow();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the DFA state id of the subset with the given words, without
+     * adding it to the table.
+     *
+     * @param words - the bitset words of the subset
+     * @return the DFA state id of the subset, or -1 if it hasn't been interned
+     */
+    int indexOf(long[] words) {
+        int slot = find(words, StateSet.hash(words));
+        return slots[slot] == null ? -1 : ids[slot];
+    }
+
+    /**
+     * Returns the subset with the given DFA state id
+     *
+     * @param id - the DFA state id
+     * @return the subset of NFA states
+     */
+    StateSet get(int id) {
+        return sets.get(id);
+    }
+
+    /**
+     * Number of distinct subsets interned so far
+     *
+     * @return the number of subsets
+     */
+    int size() {
+        return sets.size();
+    }
+
+    /**
+     * Forgets every subset, so ids start from 0 again
+     */
+    void clear() {
+        Arrays.fill(slots, null);
+        sets.clear();
+    }
+
+    /**
+     * Probes the table for a subset, stopping at the slot holding it or at
+     * the empty slot where it would go.
+     *
+     * @param words - the bitset words of the subset
+     * @param hash - the hash of those words
+     * @return the slot the probe stopped at
+     */
+    private int find(long[] words, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while(slots[slot] != null && !slots[slot].sameAs(words, hash)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the size of the hash table, re-inserting every set
+     */
+    private void grow() {
+        StateSet[] oldSlots = slots;
+        int[] oldIds = ids;
+        slots = new StateSet[oldSlots.length * 2];
+        ids = new int[oldSlots.length * 2];
+        int mask = slots.length - 1;
+
+        for(int i = 0; i < oldSlots.length; i++) {
+            if(oldSlots[i] != null) {
+                int slot = oldSlots[i].hashCode() & mask;
+                while(slots[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = oldSlots[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+}
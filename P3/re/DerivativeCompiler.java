@@ -0,0 +1,298 @@
+package re;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import fa.SymbolClasses;
+import fa.dfa.CompiledDFA;
+
+/**
+ * DerivativeCompiler builds a DFA straight from a parsed regular
+ * expression with Brzozowski derivatives, without ever building an NFA.
+ * The derivative of a regex by a character matches whatever can follow
+ * that character in a match of the regex, so each DFA state is a regex,
+ * and reading a character moves to its derivative. A state is final when
+ * its regex matches the empty string.
+ *
+ * For this to end, equal derivatives have to be recognized as one state.
+ * Every regex built here is put in a canonical form first: unions are
+ * flattened, have repeated choices dropped and are sorted, concatenations
+ * are flattened and lose their empty string parts, and (r*)* = r*. Every
+ * canonical regex is then hash consed, so each one is only ever made once.
+ * Regex.equals checks for the same object and for equal cached hashes
+ * before it compares structure, and the children of a regex built here
+ * are always consed already, so looking one up compares its children by
+ * reference. The regex matching nothing at all is null, and becomes the
+ * -1 reject transition of the compiled DFA.
+ *
+ * The states come out near minimal, so no minimization pass is needed.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+class DerivativeCompiler {
+    // Total order on canonical regexes for sorting union choices. Equal
+    // hashes are rare, and only then are the regexes written out.
+    private static final Comparator<Regex> ORDER =
+            Comparator.comparingInt(Regex::hashCode).thenComparing(Regex::toString);
+
+    private Map<Regex, Regex> consed;       // every canonical regex made so far, by itself
+    private LinkedHashSet<Character> sigma; // the characters in the regex, in the order they appear
+    private List<Map<Regex, Regex>> memo;   // per character, derivatives already worked out
+
+    /**
+     * Constructor for the compiler.
+     */
+    DerivativeCompiler() {
+        this.consed = new HashMap<>();
+        this.sigma = new LinkedHashSet<>();
+        this.memo = new ArrayList<>();
+    }
+
+    /**
+     * Builds the DFA for a regex. The builder must not be used afterwards.
+     *
+     * @param regex - the parsed regular expression
+     * @return - the compiled DFA
+     */
+    CompiledDFA compile(Regex regex) {
+        Regex start = regex.accept(new Canonical());
+
+        char[] abc = new char[sigma.size()];
+        int i = 0;
+        for(char c : sigma) {
+            abc[i++] = c;
+            memo.add(new HashMap<>());
+        }
+
+        // explore the derivatives breadth first, giving each new one the next state number
+        Map<Regex, Integer> ids = new HashMap<>();
+        List<Regex> states = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        ids.put(start, 0);
+        states.add(start);
+        for(int s = 0; s < states.size(); s++) {
+            int[] row = new int[abc.length];
+            for(int c = 0; c < abc.length; c++) {
+                Regex next = derive(states.get(s), c, abc[c]);
+                if(next == null) {
+                    row[c] = -1;    // nothing can match after this character
+                } else {
+                    Integer id = ids.get(next);
+                    if(id == null) {
+                        id = states.size();
+                        ids.put(next, id);
+                        states.add(next);
+                    }
+                    row[c] = id;
+                }
+            }
+            rows.add(row);
+        }
+
+        // characters whose whole column of the table is the same share a class
+        int[][] columns = new int[abc.length][states.size()];
+        for(int s = 0; s < states.size(); s++) {
+            for(int c = 0; c < abc.length; c++) {
+                columns[c][s] = rows.get(s)[c];
+            }
+        }
+        SymbolClasses classes = SymbolClasses.group(abc, columns);
+        int classCount = classes.getClassCount();
+
+        int[] table = new int[states.size() * classCount];
+        long[] finals = new long[(states.size() + 63) >>> 6];
+        for(int s = 0; s < states.size(); s++) {
+            table[s * classCount] = -1;   // class 0 is outside the alphabet
+            for(int c = 0; c < abc.length; c++) {
+                table[s * classCount + classes.classOf(abc[c])] = rows.get(s)[c];
+            }
+            if(states.get(s).isNullable()) {
+                finals[s >>> 6] |= 1L << s;
+            }
+        }
+
+        return CompiledDFA.of(classes.toLookupTable(), classCount, table, finals, 0);
+    }
+
+    /**
+     * Private function returning the derivative of a canonical regex by a
+     * character, remembering it in case the same regex comes up again
+     *
+     * @param regex - the canonical regex
+     * @param index - the index of the character in sigma
+     * @param c - the character
+     * @return - the canonical derivative, or null if it matches nothing
+     */
+    private Regex derive(Regex regex, int index, char c) {
+        Map<Regex, Regex> known = memo.get(index);
+        if(known.containsKey(regex)) {
+            return known.get(regex);
+        }
+        Regex derivative = regex.accept(new Derivative(index, c));
+        known.put(regex, derivative);
+        return derivative;
+    }
+
+    /**
+     * Private function returning the one instance of a canonical regex
+     *
+     * @param regex - the canonical regex
+     * @return - the instance made first
+     */
+    private Regex cons(Regex regex) {
+        Regex existing = consed.putIfAbsent(regex, regex);
+        return existing == null ? regex : existing;
+    }
+
+    /**
+     * Private function making the canonical union of canonical regexes
+     *
+     * @param choices - the canonical choices, null for ones that match nothing
+     * @return - the canonical union, or null if it matches nothing
+     */
+    private Regex union(List<Regex> choices) {
+        LinkedHashSet<Regex> flat = new LinkedHashSet<>();
+        for(Regex choice : choices) {
+            if(choice instanceof Regex.Union) {
+                flat.addAll(((Regex.Union) choice).getChoices());
+            } else if(choice != null) {
+                flat.add(choice);
+            }
+        }
+        if(flat.isEmpty()) {
+            return null;
+        }
+
+        Regex[] sorted = flat.toArray(new Regex[0]);
+        Arrays.sort(sorted, ORDER);
+        return cons(Regex.union(Arrays.asList(sorted)));
+    }
+
+    /**
+     * Private function making the canonical concatenation of canonical regexes
+     *
+     * @param parts - the canonical parts, null for ones that match nothing
+     * @return - the canonical concatenation, or null if it matches nothing
+     */
+    private Regex concat(List<Regex> parts) {
+        List<Regex> flat = new ArrayList<>();
+        for(Regex part : parts) {
+            if(part == null) {
+                return null;    // nothing followed by anything is still nothing
+            }
+            if(part instanceof Regex.Concat) {
+                flat.addAll(((Regex.Concat) part).getParts());
+            } else if(!part.equals(Regex.EPSILON)) {
+                flat.add(part);
+            }
+        }
+        return cons(Regex.concat(flat));
+    }
+
+    /**
+     * Private function making the canonical star of a canonical regex
+     *
+     * @param body - the canonical body, null if it matches nothing
+     * @return - the canonical star
+     */
+    private Regex star(Regex body) {
+        if(body == null || body.equals(Regex.EPSILON)) {
+            return cons(Regex.EPSILON);
+        }
+        if(body instanceof Regex.Star) {
+            return body;
+        }
+        return cons(Regex.star(body));
+    }
+
+    /**
+     * Rebuilds a parsed regex in canonical form, noting every character in it.
+     */
+    private class Canonical implements Regex.Visitor<Regex> {
+        @Override
+        public Regex visitLiteral(Regex.Literal literal) {
+            if(!literal.isEpsilon()) {
+                sigma.add(literal.getSymbol());
+            }
+            return cons(literal);
+        }
+
+        @Override
+        public Regex visitConcat(Regex.Concat concat) {
+            List<Regex> parts = new ArrayList<>();
+            for(Regex part : concat.getParts()) {
+                parts.add(part.accept(this));
+            }
+            return concat(parts);
+        }
+
+        @Override
+        public Regex visitUnion(Regex.Union union) {
+            List<Regex> choices = new ArrayList<>();
+            for(Regex choice : union.getChoices()) {
+                choices.add(choice.accept(this));
+            }
+            return union(choices);
+        }
+
+        @Override
+        public Regex visitStar(Regex.Star star) {
+            return star(star.getBody().accept(this));
+        }
+    }
+
+    /**
+     * Works out the derivative of a canonical regex by one character.
+     */
+    private class Derivative implements Regex.Visitor<Regex> {
+        private int index;  // index of the character in sigma
+        private char c;     // the character
+
+        Derivative(int index, char c) {
+            this.index = index;
+            this.c = c;
+        }
+
+        // a character leaves the empty string if it matches, and nothing otherwise
+        @Override
+        public Regex visitLiteral(Regex.Literal literal) {
+            return !literal.isEpsilon() && literal.getSymbol() == c ? Regex.EPSILON : null;
+        }
+
+        // d(r1 r2...) = d(r1) r2... | d(r2...) when r1 matches the empty string
+        @Override
+        public Regex visitConcat(Regex.Concat concat) {
+            List<Regex> parts = concat.getParts();
+            Regex first = parts.get(0);
+            Regex rest = concat(parts.subList(1, parts.size()));
+
+            Regex derivative = concat(Arrays.asList(derive(first, index, c), rest));
+            if(first.isNullable()) {
+                derivative = union(Arrays.asList(derivative, derive(rest, index, c)));
+            }
+            return derivative;
+        }
+
+        // d(r1|r2|...) = d(r1)|d(r2)|...
+        @Override
+        public Regex visitUnion(Regex.Union union) {
+            List<Regex> choices = new ArrayList<>();
+            for(Regex choice : union.getChoices()) {
+                choices.add(derive(choice, index, c));
+            }
+            return union(choices);
+        }
+
+        // d(r*) = d(r) r*
+        @Override
+        public Regex visitStar(Regex.Star star) {
+            return concat(Arrays.asList(derive(star.getBody(), index, c), star));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package re;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fa.nfa.NFA;
+
+/**
+ * GlushkovBuilder builds the position automaton of a parsed regular
+ * expression. Every literal character in the regex is a position, and the
+ * NFA has one state per position, named by its number from 1, plus the
+ * start state "0". Reading a character always moves to the position that
+ * matched it, so the NFA has no empty transitions at all:
+ *
+ *   the start state moves to every position that can begin a match
+ *   a position moves to every position that can follow it
+ *   the final states are the positions that can end a match, and the
+ *   start state if the regex matches the empty string
+ *
+ * For a regex with n positions this gives exactly n + 1 states, against
+ * about 2n for Thompson's construction, though a position can have up to
+ * n transitions out.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+class GlushkovBuilder implements Regex.Visitor<GlushkovBuilder.Positions> {
+    private NFA nfa;                    // the NFA being built
+    private List<Character> symbols;    // the character at each position, position 0 is the start
+
+    /**
+     * Constructor for the builder, starting with an NFA holding only the start state.
+     */
+    GlushkovBuilder() {
+        this.nfa = new NFA();
+        this.symbols = new ArrayList<>();
+        newPosition('e');   // the start state
+    }
+
+    /**
+     * Builds the position automaton for a regex. The builder must not be
+     * used afterwards.
+     *
+     * @param regex - the parsed regular expression
+     * @return - the NFA
+     */
+    NFA build(Regex regex) {
+        Positions whole = regex.accept(this);
+        nfa.addStartState("0");
+
+        // the start state can be followed by anything that begins a match
+        for(int p : whole.first) {
+            follow(0, p);
+        }
+
+        for(int p : whole.last) {
+            nfa.addFinalState(Integer.toString(p));
+        }
+        if(whole.nullable) {
+            nfa.addFinalState("0");
+        }
+        return nfa;
+    }
+
+    /**
+     * A literal is a new position, which both begins and ends its match.
+     * The empty string has no position.
+     *
+     * @param literal - the character to match
+     * @return - its positions
+     */
+    @Override
+    public Positions visitLiteral(Regex.Literal literal) {
+        Positions positions = new Positions(literal.isEpsilon());
+        if(!literal.isEpsilon()) {
+            int p = newPosition(literal.getSymbol());
+            positions.first.add(p);
+            positions.last.add(p);
+        }
+        return positions;
+    }
+
+    /**
+     * A concatenation begins with the first positions of its parts, up to
+     * and including the first part that can't match the empty string, and
+     * ends the same way from the back. Every last position of a part is
+     * followed by the first positions of the part after it.
+     *
+     * @param concat - the parts, in order
+     * @return - its positions
+     */
+    @Override
+    public Positions visitConcat(Regex.Concat concat) {
+        Positions whole = new Positions(true);
+        for(Regex part : concat.getParts()) {
+            Positions next = part.accept(this);
+
+            // everything that could end the concatenation so far can be followed by this part
+            for(int q : whole.last) {
+                for(int p : next.first) {
+                    follow(q, p);
+                }
+            }
+
+            if(whole.nullable) {
+                whole.first.addAll(next.first);
+            }
+            if(!next.nullable) {
+                whole.last.clear();
+            }
+            whole.last.addAll(next.last);
+            whole.nullable &= next.nullable;
+        }
+        return whole;
+    }
+
+    /**
+     * A union begins and ends with the positions of any of its choices.
+     *
+     * @param union - the choices
+     * @return - its positions
+     */
+    @Override
+    public Positions visitUnion(Regex.Union union) {
+        Positions whole = new Positions(false);
+        for(Regex choice : union.getChoices()) {
+            Positions next = choice.accept(this);
+            whole.first.addAll(next.first);
+            whole.last.addAll(next.last);
+            whole.nullable |= next.nullable;
+        }
+        return whole;
+    }
+
+    /**
+     * A star begins and ends like its body, but matches the empty string,
+     * and every last position of the body is followed by its first positions.
+     *
+     * @param star - the regex to repeat
+     * @return - its positions
+     */
+    @Override
+    public Positions visitStar(Regex.Star star) {
+        Positions body = star.getBody().accept(this);
+        for(int q : body.last) {
+            for(int p : body.first) {
+                follow(q, p);
+            }
+        }
+        body.nullable = true;
+        return body;
+    }
+
+    /**
+     * Private function adding a transition from one position to another,
+     * on the character at the position moved to
+     *
+     * @param from - the position moved from
+     * @param to - the position moved to
+     */
+    private void follow(int from, int to) {
+        nfa.addTransition(Integer.toString(from), symbols.get(to), Integer.toString(to));
+    }
+
+    /**
+     * Private function adding a new position, and its state, to the NFA
+     *
+     * @param c - the character at the position
+     * @return - the number of the new position
+     */
+    private int newPosition(char c) {
+        int p = symbols.size();
+        symbols.add(c);
+        nfa.addState(Integer.toString(p));
+        return p;
+    }
+
+    /**
+     * The positions that can begin and end a match of a node, and whether
+     * it matches the empty string.
+     */
+    static final class Positions {
+        private List<Integer> first = new ArrayList<>();    // positions that can begin a match
+        private List<Integer> last = new ArrayList<>();     // positions that can end a match
+        private boolean nullable;                           // whether the empty string matches
+
+        private Positions(boolean nullable) {
+            this.nullable = nullable;
+        }
+    }
+}
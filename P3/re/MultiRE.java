@@ -0,0 +1,51 @@
+package re;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fa.nfa.MultiPatternDFA;
+import fa.nfa.NFA;
+
+/**
+ * MultiRE compiles several regular expressions, in the same format RE
+ * takes, into one MultiPatternDFA. Testing an input against the result
+ * reports every regular expression that matches it in a single pass,
+ * instead of building a DFA per regular expression and running each.
+ *
+ * The id of each regular expression is its position in the list.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+public class MultiRE {
+    private List<String> regexes;   // the regular expressions to be compiled
+
+    /**
+     * Constructor for the MultiRE object. Takes in the list of regular
+     * expressions to compile together.
+     *
+     * @param regexes - the regular expressions, in pattern id order
+     *
+     */
+    public MultiRE(List<String> regexes) {
+        this.regexes = new ArrayList<>(regexes);
+    }
+
+    /**
+     * Parses every regular expression into an NFA, and determinizes them
+     * all together into one DFA.
+     *
+     * @return - a DFA reporting which of the regular expressions match an input
+     *
+     */
+    public MultiPatternDFA getDFA() {
+        List<NFA> nfas = new ArrayList<>();
+
+        // each regular expression gets its own NFA, in order
+        for(String regex : regexes) {
+            nfas.add(new RE(regex).getNFA());
+        }
+
+        return new MultiPatternDFA(nfas);
+    }
+}
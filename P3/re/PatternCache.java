@@ -0,0 +1,238 @@
+package re;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import fa.dfa.CompiledDFA;
+
+/**
+ * PatternCache keeps the compiled DFAs of the regular expressions used
+ * most recently, so a regular expression that keeps coming up is only
+ * parsed and compiled once. It holds at most a fixed number of DFAs, and
+ * when it is full the one used longest ago is evicted.
+ *
+ * The cache is safe to use from many threads. Compiling happens outside
+ * the cache's lock, and if several threads ask for the same regular
+ * expression at once, one of them compiles it while the others wait for
+ * its result. A regular expression that fails to compile is not cached,
+ * and the failure is thrown to every thread that was waiting for it.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+public class PatternCache {
+    // Default number of compiled DFAs the cache holds
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Object lock = new Object();                   // guards everything below
+    private final Function<String, CompiledDFA> compiler;       // compiles a regex that isn't cached
+    private final int capacity;                                 // most DFAs the cache holds
+    private final LinkedHashMap<String, CompiledDFA> cache;     // regex -> DFA, least recently used first
+    private final Map<String, FutureTask<CompiledDFA>> loading; // regexes being compiled right now
+    private long hits;                                          // lookups answered without compiling
+    private long misses;                                        // lookups that compiled the regex
+    private long evictions;                                     // DFAs dropped to make room
+
+    /**
+     * Constructs a cache with the default capacity, compiling regular
+     * expressions with RE.getCompiledDFA().
+     */
+    public PatternCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a cache compiling regular expressions with RE.getCompiledDFA().
+     *
+     * @param capacity - the most compiled DFAs the cache may hold
+     */
+    public PatternCache(int capacity) {
+        this(capacity, regex -> new RE(regex).getCompiledDFA());
+    }
+
+    /**
+     * Constructs a cache with its own way of compiling regular expressions.
+     *
+     * @param capacity - the most compiled DFAs the cache may hold
+     * @param compiler - compiles a regular expression into a DFA
+     */
+    public PatternCache(int capacity, Function<String, CompiledDFA> compiler) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        this.compiler = compiler;
+        this.loading = new HashMap<>();
+
+        // an access ordered map evicts the least recently used entry
+        this.cache = new LinkedHashMap<String, CompiledDFA>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledDFA> eldest) {
+                if(size() > PatternCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled DFA for a regular expression, compiling it if
+     * it isn't cached yet.
+     *
+     * @param regex - the regular expression
+     * @return - its compiled DFA
+     */
+    public CompiledDFA get(String regex) {
+        FutureTask<CompiledDFA> task;
+        boolean compiling = false;
+
+        synchronized(lock) {
+            CompiledDFA dfa = cache.get(regex);
+            if(dfa != null) {
+                hits++;
+                return dfa;
+            }
+
+            // if another thread is already compiling it, wait for that one
+            task = loading.get(regex);
+            if(task == null) {
+                task = new FutureTask<>(() -> compiler.apply(regex));
+                loading.put(regex, task);
+                compiling = true;
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+
+        if(compiling) {
+            task.run();
+        }
+
+        CompiledDFA dfa = null;
+        try {
+            dfa = await(task);
+            return dfa;
+        } finally {
+            if(compiling) {
+                synchronized(lock) {
+                    loading.remove(regex);
+                    if(dfa != null) {
+                        cache.put(regex, dfa);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of compiled DFAs in the cache
+     *
+     * @return - the number of cached DFAs
+     */
+    public int size() {
+        synchronized(lock) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Most compiled DFAs the cache holds before evicting
+     *
+     * @return - the capacity of the cache
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of lookups answered without compiling, including those that
+     * waited for another thread to compile the same regular expression
+     *
+     * @return - the number of hits
+     */
+    public long getHits() {
+        synchronized(lock) {
+            return hits;
+        }
+    }
+
+    /**
+     * Number of lookups that had to compile their regular expression
+     *
+     * @return - the number of misses
+     */
+    public long getMisses() {
+        synchronized(lock) {
+            return misses;
+        }
+    }
+
+    /**
+     * Number of compiled DFAs evicted to make room for newer ones
+     *
+     * @return - the number of evictions
+     */
+    public long getEvictions() {
+        synchronized(lock) {
+            return evictions;
+        }
+    }
+
+    /**
+     * Empties the cache. The counters are kept.
+     */
+    public void clear() {
+        synchronized(lock) {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized(lock) {
+            return "PatternCache { cached = " + cache.size() + " of " + capacity
+                    + ", hits = " + hits + ", misses = " + misses + ", evictions = " + evictions + " }";
+        }
+    }
+
+    /**
+     * Private function waiting for a compile to finish, even if the thread
+     * is interrupted meanwhile. The interrupt is passed on afterwards.
+     *
+     * @param task - the compile
+     * @return - the compiled DFA
+     */
+    private static CompiledDFA await(FutureTask<CompiledDFA> task) {
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    return task.get();
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                } catch(ExecutionException e) {
+                    // pass on the compiler's own exception
+                    Throwable cause = e.getCause();
+                    if(cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if(cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
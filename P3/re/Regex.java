@@ -0,0 +1,351 @@
+package re;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Regex is the parsed form of a regular expression: an immutable tree of
+ * unions, concatenations, stars and literal characters. Parsing a regular
+ * expression once with RE gives a tree that can be kept and handed to
+ * any number of passes, such as building an NFA, without parsing again.
+ *
+ * As everywhere else, the literal 'e' stands for the empty string. Trees
+ * are compared by structure, so two trees for the same text are equal.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+public abstract class Regex {
+    // The regex matching only the empty string
+    public static final Regex EPSILON = new Literal('e');
+
+    private final int hash;         // hash code, worked out once since the tree never changes
+    private final boolean nullable; // whether the regex matches the empty string
+
+    private Regex(int hash, boolean nullable) {
+        this.hash = hash;
+        this.nullable = nullable;
+    }
+
+    /**
+     * A pass over a regex tree, with one case for each kind of node.
+     *
+     * @param <T> - what the pass returns
+     */
+    public interface Visitor<T> {
+        T visitUnion(Union union);
+        T visitConcat(Concat concat);
+        T visitStar(Star star);
+        T visitLiteral(Literal literal);
+    }
+
+    /**
+     * Runs a pass on this node.
+     *
+     * @param visitor - the pass
+     * @return - whatever the pass returns for this node
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
+    /**
+     * Makes a regex matching one character, or the empty string for 'e'
+     *
+     * @param c - the character
+     * @return - the regex
+     */
+    public static Regex literal(char c) {
+        return c == 'e' ? EPSILON : new Literal(c);
+    }
+
+    /**
+     * Makes a regex matching any of the choices. A single choice is
+     * returned as it is.
+     *
+     * @param choices - the choices, at least one
+     * @return - the regex
+     */
+    public static Regex union(List<Regex> choices) {
+        if(choices.size() == 1) {
+            return choices.get(0);
+        }
+        return new Union(choices);
+    }
+
+    /**
+     * Makes a regex matching the parts one after another. A single part
+     * is returned as it is, and no parts at all match the empty string.
+     *
+     * @param parts - the parts, in order
+     * @return - the regex
+     */
+    public static Regex concat(List<Regex> parts) {
+        if(parts.isEmpty()) {
+            return EPSILON;
+        }
+        if(parts.size() == 1) {
+            return parts.get(0);
+        }
+        return new Concat(parts);
+    }
+
+    /**
+     * Makes a regex matching the body zero or more times
+     *
+     * @param body - the regex to repeat
+     * @return - the regex
+     */
+    public static Regex star(Regex body) {
+        return new Star(body);
+    }
+
+    /**
+     * Simplifies the regex with algebraic rewrites that don't change its
+     * language, so the automata built from it are smaller.
+     *
+     * @return - the simplified regex, which may be this one
+     */
+    public Regex simplify() {
+        return accept(new Simplifier());
+    }
+
+    /**
+     * Whether the regex matches the empty string
+     *
+     * @return - true if the empty string is in the language of the regex
+     */
+    public boolean isNullable() {
+        return nullable;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Private function copying a list of children, so a node can't be changed
+     * through the list it was made from.
+     *
+     * @param children - the children
+     * @return - an unmodifiable copy
+     */
+    private static List<Regex> freeze(List<Regex> children) {
+        return Collections.unmodifiableList(new ArrayList<>(children));
+    }
+
+    /**
+     * Private function checking whether any of a list of regexes matches the empty string
+     *
+     * @param children - the regexes
+     * @return - true if at least one is nullable
+     */
+    private static boolean anyNullable(List<Regex> children) {
+        for(Regex child : children) {
+            if(child.nullable) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private function checking whether all of a list of regexes match the empty string
+     *
+     * @param children - the regexes
+     * @return - true if every one is nullable
+     */
+    private static boolean allNullable(List<Regex> children) {
+        for(Regex child : children) {
+            if(!child.nullable) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Private function writing a child out, in parentheses if it would
+     * otherwise be read back differently
+     *
+     * @param child - the child to write
+     * @param bare - whether the child can be written without parentheses
+     * @param out - where to write it
+     */
+    private static void write(Regex child, boolean bare, StringBuilder out) {
+        if(bare) {
+            out.append(child);
+        } else {
+            out.append('(').append(child).append(')');
+        }
+    }
+
+    /**
+     * A choice between two or more regexes: r1|r2|...
+     */
+    public static final class Union extends Regex {
+        private final List<Regex> choices;  // the choices, in order
+
+        private Union(List<Regex> choices) {
+            super(31 * choices.hashCode() + 1, anyNullable(choices));
+            this.choices = freeze(choices);
+        }
+
+        /**
+         * Getter for the choices
+         *
+         * @return - the choices, in order; the list can't be changed
+         */
+        public List<Regex> getChoices() {
+            return choices;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitUnion(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || o instanceof Union && o.hashCode() == hashCode()
+                    && ((Union) o).choices.equals(choices);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            for(Regex choice : choices) {
+                if(out.length() > 0) {
+                    out.append('|');
+                }
+                out.append(choice);
+            }
+            return out.toString();
+        }
+    }
+
+    /**
+     * Two or more regexes one after another: r1r2...
+     */
+    public static final class Concat extends Regex {
+        private final List<Regex> parts;    // the parts, in order
+
+        private Concat(List<Regex> parts) {
+            super(31 * parts.hashCode() + 2, allNullable(parts));
+            this.parts = freeze(parts);
+        }
+
+        /**
+         * Getter for the parts
+         *
+         * @return - the parts, in order; the list can't be changed
+         */
+        public List<Regex> getParts() {
+            return parts;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitConcat(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || o instanceof Concat && o.hashCode() == hashCode()
+                    && ((Concat) o).parts.equals(parts);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            for(Regex part : parts) {
+                write(part, !(part instanceof Union), out);
+            }
+            return out.toString();
+        }
+    }
+
+    /**
+     * A regex repeated zero or more times: r*
+     */
+    public static final class Star extends Regex {
+        private final Regex body;   // the regex repeated
+
+        private Star(Regex body) {
+            super(31 * body.hashCode() + 3, true);
+            this.body = body;
+        }
+
+        /**
+         * Getter for the regex repeated
+         *
+         * @return - the body of the star
+         */
+        public Regex getBody() {
+            return body;
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitStar(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || o instanceof Star && o.hashCode() == hashCode()
+                    && ((Star) o).body.equals(body);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            write(body, body instanceof Literal, out);
+            return out.append('*').toString();
+        }
+    }
+
+    /**
+     * A single character, or the empty string for 'e'
+     */
+    public static final class Literal extends Regex {
+        private final char symbol;  // the character matched
+
+        private Literal(char symbol) {
+            super(31 * symbol + 4, symbol == 'e');
+            this.symbol = symbol;
+        }
+
+        /**
+         * Getter for the character matched
+         *
+         * @return - the character, 'e' for the empty string
+         */
+        public char getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Whether this literal stands for the empty string
+         *
+         * @return - true if the literal is 'e'
+         */
+        public boolean isEpsilon() {
+            return symbol == 'e';
+        }
+
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visitLiteral(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Literal && ((Literal) o).symbol == symbol;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(symbol);
+        }
+    }
+}
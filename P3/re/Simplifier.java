@@ -0,0 +1,203 @@
+package re;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import re.Regex.Concat;
+import re.Regex.Literal;
+import re.Regex.Star;
+import re.Regex.Union;
+
+/**
+ * Simplifier rewrites a regex tree, bottom up, into a smaller one with
+ * the same language. Machine made regular expressions are full of pieces
+ * that only cost states in the NFA, so it applies these rewrites:
+ *
+ *   (x*)* = x*, e* = e and (e|x|y*)* = (x|y)*
+ *   xe = ex = x, and x*x* = x*
+ *   nested unions are flattened and repeated choices dropped
+ *   e|x = x when x already matches the empty string
+ *   xy|xz = x(y|z), factoring out the first part choices share
+ *
+ * Every rewrite keeps the order choices and parts first appear in, so the
+ * result reads like the input.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+class Simplifier implements Regex.Visitor<Regex> {
+
+    @Override
+    public Regex visitLiteral(Literal literal) {
+        return literal;
+    }
+
+    @Override
+    public Regex visitStar(Star star) {
+        return star(star.getBody().accept(this));
+    }
+
+    @Override
+    public Regex visitConcat(Concat concat) {
+        List<Regex> parts = new ArrayList<>();
+        for(Regex part : concat.getParts()) {
+            parts.add(part.accept(this));
+        }
+        return concat(parts);
+    }
+
+    @Override
+    public Regex visitUnion(Union union) {
+        List<Regex> choices = new ArrayList<>();
+        for(Regex choice : union.getChoices()) {
+            choices.add(choice.accept(this));
+        }
+        return union(choices);
+    }
+
+    /**
+     * Private function starring a simplified regex
+     *
+     * @param body - the simplified regex to repeat
+     * @return - the simplified star
+     */
+    private static Regex star(Regex body) {
+        // a star of a star, or of the empty string, adds nothing
+        if(body instanceof Star || body.equals(Regex.EPSILON)) {
+            return body;
+        }
+
+        // under a star, choosing the empty string or starring a choice adds nothing
+        if(body instanceof Union) {
+            List<Regex> choices = new ArrayList<>();
+            for(Regex choice : ((Union) body).getChoices()) {
+                if(choice instanceof Star) {
+                    choices.add(((Star) choice).getBody());
+                } else if(!choice.equals(Regex.EPSILON)) {
+                    choices.add(choice);
+                }
+            }
+            body = union(choices);
+        }
+
+        return Regex.star(body);
+    }
+
+    /**
+     * Private function concatenating simplified regexes, flattening nested
+     * concatenations and dropping the parts that add nothing
+     *
+     * @param parts - the simplified regexes, in order
+     * @return - the simplified concatenation
+     */
+    private static Regex concat(List<Regex> parts) {
+        List<Regex> flat = new ArrayList<>();
+        for(Regex part : parts) {
+            if(part instanceof Concat) {
+                for(Regex inner : ((Concat) part).getParts()) {
+                    append(flat, inner);
+                }
+            } else {
+                append(flat, part);
+            }
+        }
+        return Regex.concat(flat);
+    }
+
+    /**
+     * Private function adding a part to the end of a concatenation, unless
+     * it adds nothing: the empty string, or a star right after the same star
+     *
+     * @param flat - the parts so far
+     * @param part - the part to add
+     */
+    private static void append(List<Regex> flat, Regex part) {
+        if(part.equals(Regex.EPSILON)) {
+            return;
+        }
+        if(part instanceof Star && !flat.isEmpty() && flat.get(flat.size() - 1).equals(part)) {
+            return;
+        }
+        flat.add(part);
+    }
+
+    /**
+     * Private function making the union of simplified regexes, flattening
+     * nested unions, dropping repeated or needless choices, and factoring
+     * out common first parts
+     *
+     * @param choices - the simplified regexes, at least one
+     * @return - the simplified union
+     */
+    private static Regex union(List<Regex> choices) {
+        LinkedHashSet<Regex> flat = new LinkedHashSet<>();
+        for(Regex choice : choices) {
+            if(choice instanceof Union) {
+                flat.addAll(((Union) choice).getChoices());
+            } else {
+                flat.add(choice);
+            }
+        }
+
+        // the empty string is already matched if any other choice matches it
+        if(flat.size() > 1 && flat.contains(Regex.EPSILON)) {
+            flat.remove(Regex.EPSILON);
+            boolean covered = false;
+            for(Regex choice : flat) {
+                covered |= choice.isNullable();
+            }
+            if(!covered) {
+                flat.add(Regex.EPSILON);
+            }
+        }
+
+        // group the choices by their first part, in the order the groups first appear
+        Map<Regex, List<Regex>> groups = new LinkedHashMap<>();
+        for(Regex choice : flat) {
+            groups.computeIfAbsent(head(choice), k -> new ArrayList<>()).add(choice);
+        }
+
+        List<Regex> factored = new ArrayList<>();
+        for(Map.Entry<Regex, List<Regex>> group : groups.entrySet()) {
+            List<Regex> members = group.getValue();
+            if(members.size() == 1) {
+                factored.add(members.get(0));
+            } else {
+                List<Regex> tails = new ArrayList<>();
+                for(Regex member : members) {
+                    tails.add(tail(member));
+                }
+                factored.add(concat(Arrays.asList(group.getKey(), union(tails))));
+            }
+        }
+        return Regex.union(factored);
+    }
+
+    /**
+     * Private function returning the first part of a regex
+     *
+     * @param regex - the regex
+     * @return - its first part, or the whole regex if it isn't a concatenation
+     */
+    private static Regex head(Regex regex) {
+        return regex instanceof Concat ? ((Concat) regex).getParts().get(0) : regex;
+    }
+
+    /**
+     * Private function returning what follows the first part of a regex
+     *
+     * @param regex - the regex
+     * @return - the rest of the concatenation, or the empty string if it isn't one
+     */
+    private static Regex tail(Regex regex) {
+        if(regex instanceof Concat) {
+            List<Regex> parts = ((Concat) regex).getParts();
+            return Regex.concat(parts.subList(1, parts.size()));
+        }
+        return Regex.EPSILON;
+    }
+}
@@ -0,0 +1,180 @@
+package re;
+
+import fa.nfa.NFA;
+
+/**
+ * ThompsonBuilder builds the NFA for a parsed regular expression in a
+ * single NFA, one node at a time, the way Thompson's construction does.
+ * Each node of the regex becomes a fragment: a start state, plus a list
+ * of dangling states that have not been joined to anything yet. Joining
+ * fragments only adds states and empty transitions for the new operator,
+ * and patches the dangling states of one fragment to the start of the
+ * next, so no state or transition is ever copied. Building the NFA for a
+ * regex tree of n nodes takes O(n) time.
+ *
+ * @author James Souder and Jason Egbert
+ *
+ */
+class ThompsonBuilder implements Regex.Visitor<ThompsonBuilder.Fragment> {
+    private NFA nfa;        // the NFA every fragment is built in
+    private int stateNamer; // the integer to be used to name states uniquely
+
+    /**
+     * Constructor for the builder, starting with an empty NFA.
+     */
+    ThompsonBuilder() {
+        this.nfa = new NFA();
+        this.stateNamer = 0;
+    }
+
+    /**
+     * Builds the NFA for a regex. The start state of the regex's fragment
+     * becomes the start state, and its dangling states the final states.
+     * The builder must not be used afterwards.
+     *
+     * @param regex - the parsed regular expression
+     * @return - the NFA
+     */
+    NFA build(Regex regex) {
+        Fragment whole = regex.accept(this);
+        nfa.addStartState(whole.start);
+        for(Dangling d = whole.out; d != null; d = d.next) {
+            nfa.addFinalState(d.state);
+        }
+        return nfa;
+    }
+
+    /**
+     * Makes a fragment that matches a single character. The character 'e'
+     * stands for the empty string, so it makes a fragment that matches
+     * only the empty string.
+     *
+     * @param literal - the character to match
+     * @return - the fragment
+     */
+    @Override
+    public Fragment visitLiteral(Regex.Literal literal) {
+        String from = newState();
+        String to = newState();
+        nfa.addTransition(from, literal.getSymbol(), to);
+        return new Fragment(from, new Dangling(to));
+    }
+
+    /**
+     * Joins fragments so each is followed by the next. The dangling states
+     * of each part are patched to the start of the part after it.
+     *
+     * @param concat - the parts, in order
+     * @return - the concatenated fragment
+     */
+    @Override
+    public Fragment visitConcat(Regex.Concat concat) {
+        Fragment first = null;
+        Fragment last = null;
+        for(Regex part : concat.getParts()) {
+            Fragment next = part.accept(this);
+            if(first == null) {
+                first = next;
+            } else {
+                patch(last.out, next.start);
+            }
+            last = next;
+        }
+        return new Fragment(first.start, last.out);
+    }
+
+    /**
+     * Joins fragments so any one of them may be matched, through a new
+     * start state with empty transitions to each.
+     *
+     * @param union - the choices
+     * @return - the union of the fragments
+     */
+    @Override
+    public Fragment visitUnion(Regex.Union union) {
+        String start = newState();
+        Dangling out = null;
+        for(Regex choice : union.getChoices()) {
+            Fragment next = choice.accept(this);
+            nfa.addTransition(start, 'e', next.start);
+
+            // the union leaves dangling whatever any choice left dangling
+            if(out == null) {
+                out = next.out;
+            } else {
+                out.last.next = next.out;
+                out.last = next.out.last;
+            }
+        }
+        return new Fragment(start, out);
+    }
+
+    /**
+     * Makes a fragment repeat zero or more times, through a new state that
+     * both starts the fragment and is where it loops back to.
+     *
+     * @param star - the regex to repeat
+     * @return - the starred fragment
+     */
+    @Override
+    public Fragment visitStar(Regex.Star star) {
+        String loop = newState();
+        Fragment body = star.getBody().accept(this);
+        nfa.addTransition(loop, 'e', body.start);
+        patch(body.out, loop);
+        return new Fragment(loop, new Dangling(loop));
+    }
+
+    /**
+     * Private function that patches every dangling state in a list to a
+     * state, with an empty transition.
+     *
+     * @param out - the list of dangling states
+     * @param to - the state to patch them to
+     */
+    private void patch(Dangling out, String to) {
+        for(Dangling d = out; d != null; d = d.next) {
+            nfa.addTransition(d.state, 'e', to);
+        }
+    }
+
+    /**
+     * Private function that adds a new, uniquely named state to the NFA
+     *
+     * @return - the name of the new state
+     */
+    private String newState() {
+        String name = Integer.toString(stateNamer++);
+        nfa.addState(name);
+        return name;
+    }
+
+    /**
+     * A piece of the NFA under construction: where it starts, and which of
+     * its states still need to be joined to whatever comes next.
+     */
+    static final class Fragment {
+        private final String start; // the start state of the fragment
+        private final Dangling out; // the states left dangling
+
+        private Fragment(String start, Dangling out) {
+            this.start = start;
+            this.out = out;
+        }
+    }
+
+    /**
+     * A linked list of dangling states. The head keeps track of the last
+     * link, so two lists can be joined in constant time.
+     */
+    private static final class Dangling {
+        private final String state; // the dangling state
+        private Dangling next;      // the next dangling state, or null
+        private Dangling last;      // the last link of the list, kept up to date on the head only
+
+        private Dangling(String state) {
+            this.state = state;
+            this.last = this;
+        }
+    }
+}